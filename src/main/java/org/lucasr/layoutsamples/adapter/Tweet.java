@@ -31,6 +31,7 @@ public class Tweet {
     private final String mMessage;
     private final String mProfileImageUrl;
     private final String mPostImageUrl;
+    private final long mVersion;
 
     public Tweet(JSONObject jsonTweet) throws JSONException {
         mId = jsonTweet.getLong(JSON_ID);
@@ -38,6 +39,21 @@ public class Tweet {
         mAuthorName = jsonTweet.getString(JSON_AUTHOR_NAME);
         mProfileImageUrl = jsonTweet.getString(JSON_PROFILE_IMAGE_URL);
         mPostImageUrl = jsonTweet.optString(JSON_POST_IMAGE_URL, null);
+        mVersion = computeVersion();
+    }
+
+    private static long hash(String value) {
+        return (value != null ? value.hashCode() : 0);
+    }
+
+    private long computeVersion() {
+        long version = 17;
+        version = 31 * version + hash(mAuthorName);
+        version = 31 * version + hash(mMessage);
+        version = 31 * version + hash(mProfileImageUrl);
+        version = 31 * version + hash(mPostImageUrl);
+
+        return version;
     }
 
     public long getId() {
@@ -60,6 +76,14 @@ public class Tweet {
         return mPostImageUrl;
     }
 
+    /**
+     * Hash of the tweet's content. Two tweets with the same id but a
+     * different version can't share layouts.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -25,6 +25,7 @@ import android.widget.BaseAdapter;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.async.ViewInflationPool;
 import org.lucasr.layoutsamples.util.RawResource;
 
 import java.util.ArrayList;
@@ -34,6 +35,7 @@ import java.util.List;
 public class TweetsAdapter extends BaseAdapter {
     private final Context mContext;
     private int mPresenterId;
+    private ViewInflationPool mInflationPool;
 
     private static List<Tweet> sEntries;
 
@@ -72,13 +74,36 @@ public class TweetsAdapter extends BaseAdapter {
         return sEntries.get(position);
     }
 
+    /**
+     * Sets a pool to take new presenters from before inflating them
+     * synchronously. Only used while the presenter matches its layout.
+     */
+    public void setInflationPool(ViewInflationPool pool) {
+        mInflationPool = pool;
+    }
+
+    private View inflatePresenter(ViewGroup parent) {
+        if (mInflationPool != null && mInflationPool.getLayoutId() == mPresenterId) {
+            final View view = mInflationPool.take();
+            if (view != null) {
+                return view;
+            }
+        }
+
+        return LayoutInflater.from(mContext).inflate(mPresenterId, parent, false);
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         final TweetPresenter presenter;
         if (convertView == null) {
-            presenter = (TweetPresenter) LayoutInflater.from(mContext).inflate(mPresenterId, parent, false);
+            presenter = (TweetPresenter) inflatePresenter(parent);
         } else {
             presenter = (TweetPresenter) convertView;
+
+            if (mInflationPool != null) {
+                mInflationPool.onViewReused();
+            }
         }
 
         Tweet tweet = (Tweet) getItem(position);
@@ -16,25 +16,299 @@
 
 package org.lucasr.layoutsamples.app;
 
+import android.app.ActivityManager;
 import android.app.Application;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Process;
 
+import com.squareup.picasso.Cache;
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.UrlConnectionDownloader;
+
+import org.lucasr.layoutsamples.async.AsyncTweetElementFactory;
+import org.lucasr.layoutsamples.async.AsyncTweetTextFactory;
+import org.lucasr.layoutsamples.async.BitmapCellPool;
+import org.lucasr.layoutsamples.async.ElementGeometryCache;
+import org.lucasr.layoutsamples.async.LayoutJobQueue;
+import org.lucasr.layoutsamples.async.LayoutMetrics;
+import org.lucasr.layoutsamples.async.LayoutSnapshot;
 import org.lucasr.layoutsamples.async.UIElementCache;
+import org.lucasr.layoutsamples.util.WorkerThreadFactory;
+
+import java.io.File;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class App extends Application {
+    public static final int LAYOUT_WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+
+    // Pre-layout workers. They fill the caches at default priority while
+    // the list is still and back off while it scrolls so that they don't
+    // compete with the UI and render threads.
+    public static final WorkerConfig LAYOUT_WORKERS =
+            new WorkerConfig("layout", LAYOUT_WORKER_COUNT,
+                             Process.THREAD_PRIORITY_DEFAULT,
+                             Process.THREAD_PRIORITY_BACKGROUND);
+
+    // Image download and decode workers. Images are only loaded for rows
+    // that are bound, so they're never worth a dropped frame.
+    public static final WorkerConfig IMAGE_WORKERS =
+            new WorkerConfig("image", 3,
+                             Process.THREAD_PRIORITY_BACKGROUND,
+                             Process.THREAD_PRIORITY_LOWEST);
+
+    // Image workers for rows that are not bound yet. A single worker at
+    // the lowest priority so that prefetching never delays bound rows.
+    public static final WorkerConfig IMAGE_PREFETCH_WORKERS =
+            new WorkerConfig("image-prefetch", 1,
+                             Process.THREAD_PRIORITY_LOWEST,
+                             Process.THREAD_PRIORITY_LOWEST);
+
+    // Writes the layout snapshot once the app goes to the background.
+    public static final WorkerConfig SNAPSHOT_WORKERS =
+            new WorkerConfig("layout-snapshot", 1,
+                             Process.THREAD_PRIORITY_BACKGROUND,
+                             Process.THREAD_PRIORITY_BACKGROUND);
+
+    private static final String LAYOUT_SNAPSHOT_FILE_NAME = "layout_snapshot";
+
+    // Fraction of the app's memory class that rasterized cells may take.
+    private static final int CELL_POOL_MEMORY_DIVIDER = 8;
+
+    // Fraction of the app's memory class that laid out elements may take.
+    private static final int ELEMENT_CACHE_MEMORY_DIVIDER = 16;
+
+    // Fraction of the app's memory class that the geometry of elements
+    // evicted from the element cache may take.
+    private static final int GEOMETRY_CACHE_MEMORY_DIVIDER = 64;
+
+    // Fraction of the app's memory class that elements under construction
+    // may take, and how many pre-layout jobs each worker may have queued.
+    private static final int IN_FLIGHT_MEMORY_DIVIDER = 32;
+    private static final int IN_FLIGHT_JOBS_PER_WORKER = 8;
+
     private UIElementCache mElementCache;
+    private ElementGeometryCache mGeometryCache;
+    private LayoutSnapshot mLayoutSnapshot;
+    private WorkerThreadFactory mLayoutThreadFactory;
+    private WorkerThreadFactory mImageThreadFactory;
+    private WorkerThreadFactory mImagePrefetchThreadFactory;
+    private boolean mScrolling;
+
+    private final LayoutMetrics mLayoutMetrics = new LayoutMetrics();
+    private LayoutJobQueue mLayoutJobQueue;
+    private Picasso mPicasso;
+    private Picasso mPrefetchPicasso;
+    private AsyncTweetElementFactory mTweetElementFactory;
+    private AsyncTweetTextFactory mTweetTextFactory;
 
     @Override
     public void onCreate() {
         super.onCreate();
-        mElementCache = new UIElementCache();
+        mGeometryCache = new ElementGeometryCache(getGeometryCacheBudget());
+        mElementCache = new UIElementCache(getElementCacheBudget(), mGeometryCache);
+
+        final WorkerThreadFactory snapshotThreadFactory =
+                SNAPSHOT_WORKERS.createThreadFactory(mScrolling);
+        mLayoutSnapshot = new LayoutSnapshot(new File(getCacheDir(), LAYOUT_SNAPSHOT_FILE_NAME),
+                                             getPackageInfo(),
+                                             getResources().getConfiguration().locale,
+                                             SNAPSHOT_WORKERS.createExecutor(snapshotThreadFactory));
+        mLayoutSnapshot.preload();
+
+        mLayoutThreadFactory = LAYOUT_WORKERS.createThreadFactory(mScrolling);
+        mLayoutJobQueue = new LayoutJobQueue(LAYOUT_WORKERS.getPoolSize(), mLayoutThreadFactory,
+                                             mLayoutMetrics);
+        mLayoutJobQueue.setMaxInFlightJobs(LAYOUT_WORKERS.getPoolSize() *
+                                           IN_FLIGHT_JOBS_PER_WORKER);
+        mLayoutJobQueue.setMaxInFlightBytes(getMemoryClassBytes() / IN_FLIGHT_MEMORY_DIVIDER);
+
+        // Both image loaders share their caches, so that prefetched images
+        // are found by the regular loads.
+        final Cache memoryCache = new LruCache(this);
+        final Downloader downloader = new UrlConnectionDownloader(this);
+
+        mImageThreadFactory = IMAGE_WORKERS.createThreadFactory(mScrolling);
+        mPicasso = new Picasso.Builder(this)
+                .memoryCache(memoryCache)
+                .downloader(downloader)
+                .executor(IMAGE_WORKERS.createExecutor(mImageThreadFactory))
+                .build();
+
+        mImagePrefetchThreadFactory = IMAGE_PREFETCH_WORKERS.createThreadFactory(mScrolling);
+        mPrefetchPicasso = new Picasso.Builder(this)
+                .memoryCache(memoryCache)
+                .downloader(downloader)
+                .executor(IMAGE_PREFETCH_WORKERS.createExecutor(mImagePrefetchThreadFactory))
+                .build();
+
+        mTweetElementFactory = new AsyncTweetElementFactory(this);
+        mTweetElementFactory.setRecordingEnabled(true);
+        mTweetElementFactory.setCellPool(new BitmapCellPool(getCellPoolBudget()));
+        mTweetTextFactory = new AsyncTweetTextFactory(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mTweetElementFactory.getCellPool().trim();
+
+        // Sent once when the UI goes to the background, the process might
+        // be killed any time after that.
+        if (level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mLayoutSnapshot.save(mElementCache, mGeometryCache);
+        }
+    }
+
+    private PackageInfo getPackageInfo() {
+        try {
+            return getPackageManager().getPackageInfo(getPackageName(), 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            throw new IllegalStateException("Could not find own package", e);
+        }
+    }
+
+    private long getMemoryClassBytes() {
+        final ActivityManager am = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        return (long) am.getMemoryClass() * 1024 * 1024;
+    }
+
+    private long getCellPoolBudget() {
+        return getMemoryClassBytes() / CELL_POOL_MEMORY_DIVIDER;
+    }
+
+    private long getElementCacheBudget() {
+        return getMemoryClassBytes() / ELEMENT_CACHE_MEMORY_DIVIDER;
     }
 
+    private long getGeometryCacheBudget() {
+        return getMemoryClassBytes() / GEOMETRY_CACHE_MEMORY_DIVIDER;
+    }
+
+    /**
+     * Switches all workers to their scrolling or idle priority. Must be
+     * called from the UI thread whenever a scroll starts or ends.
+     */
+    public void setScrolling(boolean scrolling) {
+        if (mScrolling == scrolling) {
+            return;
+        }
+
+        mScrolling = scrolling;
+        mLayoutThreadFactory.setPriority(LAYOUT_WORKERS.getPriority(scrolling));
+        mImageThreadFactory.setPriority(IMAGE_WORKERS.getPriority(scrolling));
+        mImagePrefetchThreadFactory.setPriority(IMAGE_PREFETCH_WORKERS.getPriority(scrolling));
+    }
+
+    public boolean isScrolling() {
+        return mScrolling;
+    }
+
+    /**
+     * Cache shared by all element factories, holding elements for any
+     * number of layout configurations.
+     */
     public UIElementCache getElementCache() {
         return mElementCache;
     }
 
+    /**
+     * Second tier of the element cache, see {@link ElementGeometryCache}.
+     */
+    public ElementGeometryCache getGeometryCache() {
+        return mGeometryCache;
+    }
+
+    /**
+     * Geometry laid out in previous runs, see {@link LayoutSnapshot}.
+     */
+    public LayoutSnapshot getLayoutSnapshot() {
+        return mLayoutSnapshot;
+    }
+
+    public LayoutJobQueue getLayoutJobQueue() {
+        return mLayoutJobQueue;
+    }
+
+    /**
+     * Timings and counters of the async layout pipeline.
+     */
+    public LayoutMetrics getLayoutMetrics() {
+        return mLayoutMetrics;
+    }
+
+    /**
+     * Image loader running on the {@link #IMAGE_WORKERS}. Use this one
+     * instead of Picasso's default instance.
+     */
+    public Picasso getPicasso() {
+        return mPicasso;
+    }
+
+    /**
+     * Image loader for images that are not shown yet, running on the
+     * {@link #IMAGE_PREFETCH_WORKERS}. Shares its memory cache with
+     * {@link #getPicasso()}.
+     */
+    public Picasso getPrefetchPicasso() {
+        return mPrefetchPicasso;
+    }
+
+    public AsyncTweetElementFactory getTweetElementFactory() {
+        return mTweetElementFactory;
+    }
+
+    public AsyncTweetTextFactory getTweetTextFactory() {
+        return mTweetTextFactory;
+    }
+
     public static App getInstance(Context context) {
         return (App) context.getApplicationContext();
     }
+
+    /**
+     * Name, pool size and priorities of a group of worker threads.
+     * Priorities are {@link Process} thread priorities.
+     */
+    public static class WorkerConfig {
+        private final String mName;
+        private final int mPoolSize;
+        private final int mIdlePriority;
+        private final int mScrollingPriority;
+
+        public WorkerConfig(String name, int poolSize, int idlePriority,
+                            int scrollingPriority) {
+            mName = name;
+            mPoolSize = Math.max(1, poolSize);
+            mIdlePriority = idlePriority;
+            mScrollingPriority = scrollingPriority;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getPoolSize() {
+            return mPoolSize;
+        }
+
+        public int getPriority(boolean scrolling) {
+            return (scrolling ? mScrollingPriority : mIdlePriority);
+        }
+
+        WorkerThreadFactory createThreadFactory(boolean scrolling) {
+            return new WorkerThreadFactory(mName, getPriority(scrolling));
+        }
+
+        ThreadPoolExecutor createExecutor(WorkerThreadFactory threadFactory) {
+            return new ThreadPoolExecutor(mPoolSize, mPoolSize, 0, TimeUnit.MILLISECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), threadFactory);
+        }
+    }
 }
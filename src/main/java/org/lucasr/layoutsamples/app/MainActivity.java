@@ -24,7 +24,10 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentPagerAdapter;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.view.ViewPager;
+import android.view.Menu;
+import android.view.MenuItem;
 
+import org.lucasr.layoutsamples.util.DebugOverlay;
 import org.lucasr.layoutsamples.util.ViewServer;
 
 public class MainActivity extends FragmentActivity {
@@ -55,6 +58,33 @@ public class MainActivity extends FragmentActivity {
         ViewServer.get(this).setFocusedWindow(this);
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_debug_overlay).setChecked(DebugOverlay.isEnabled());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_debug_overlay:
+                final boolean enabled = !DebugOverlay.isEnabled();
+                DebugOverlay.setEnabled(enabled);
+                item.setChecked(enabled);
+
+                DebugOverlay.refresh(mViewPager);
+                return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
     private class LayoutsAdapter extends FragmentPagerAdapter {
         public LayoutsAdapter(FragmentManager fm) {
             super(fm);
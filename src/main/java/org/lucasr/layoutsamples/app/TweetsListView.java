@@ -17,19 +17,40 @@
 package org.lucasr.layoutsamples.app;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
 import android.view.ViewTreeObserver.OnGlobalLayoutListener;
 
+import org.lucasr.layoutsamples.adapter.Tweet;
+import org.lucasr.layoutsamples.async.AsyncElementFactory;
 import org.lucasr.layoutsamples.async.TweetsLayoutLoader;
+import org.lucasr.layoutsamples.async.ViewInflationPool;
 import org.lucasr.layoutsamples.adapter.TweetsAdapter;
-import org.lucasr.layoutsamples.async.AsyncTweetElementFactory;
 import org.lucasr.smoothie.AsyncListView;
 import org.lucasr.smoothie.ItemManager;
 
 public class TweetsListView extends AsyncListView {
+    // Upper bound on how long the first frame is held back waiting
+    // for the initial items to be laid out.
+    private static final long PRELAYOUT_TIMEOUT_MS = 200;
+
+    // Screens worth of rows kept inflated ahead of demand.
+    private static final int INFLATION_POOL_SCREENS = 2;
+
+    // Time without scroll steps after which a scroll is considered over.
+    private static final long SCROLL_END_DELAY_MS = 150;
+
     private TweetsAdapter mTweetsAdapter;
+    private TweetsLayoutLoader mLayoutLoader;
+    private ViewInflationPool mInflationPool;
     private int mPresenterId;
 
+    private int mLastFirstVisible = -1;
+    private int mLastFirstTop;
+    private final Runnable mScrollEndRunnable;
+
     public TweetsListView(Context context, AttributeSet attrs) {
         this(context, attrs, android.R.attr.listViewStyle);
     }
@@ -37,18 +58,42 @@ public class TweetsListView extends AsyncListView {
     public TweetsListView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
         mPresenterId = R.layout.tweet_composite_row;
+
+        mScrollEndRunnable = new Runnable() {
+            @Override
+            public void run() {
+                App.getInstance(getContext()).setScrolling(false);
+            }
+        };
+    }
+
+    /**
+     * Returns the factory laying out the current presenter's content off
+     * the UI thread, or null if the presenter lays out everything itself.
+     */
+    private AsyncElementFactory<Tweet, ?> getElementFactory() {
+        final App app = App.getInstance(getContext());
+
+        switch (mPresenterId) {
+            case R.layout.tweet_async_row:
+                return app.getTweetElementFactory();
+
+            case R.layout.tweet_layout_row:
+                return app.getTweetTextFactory();
+
+            default:
+                return null;
+        }
     }
 
     private void updateTargetWidth() {
-        if (mPresenterId != R.layout.tweet_async_row) {
+        final AsyncElementFactory<Tweet, ?> factory = getElementFactory();
+        if (factory == null) {
             return;
         }
 
-        final Context context = getContext();
-
         final int targetWidth = getWidth() - getPaddingLeft() + getPaddingRight();
-        AsyncTweetElementFactory.setTargetWidth(context, targetWidth);
-        App.getInstance(context).getElementCache().evictAll();
+        factory.setTargetWidth(targetWidth);
 
         TweetsAdapter adapter = (TweetsAdapter) getAdapter();
         if (adapter != null) {
@@ -59,19 +104,116 @@ public class TweetsListView extends AsyncListView {
     private void updateItemLoader() {
         Context context = getContext();
 
-        if (mPresenterId == R.layout.tweet_async_row) {
-            TweetsLayoutLoader loader = new TweetsLayoutLoader(context);
+        if (mLayoutLoader != null) {
+            mLayoutLoader.getIdleSpeculator().setEnabled(false);
+            mLayoutLoader.getImagePrefetcher().cancelAll();
+        }
+
+        final AsyncElementFactory<Tweet, ?> factory = getElementFactory();
+        if (factory != null) {
+            mLayoutLoader = new TweetsLayoutLoader(context, factory);
 
-            ItemManager.Builder builder = new ItemManager.Builder(loader);
-            builder.setPreloadItemsEnabled(true).setPreloadItemsCount(30);
+            // Preloading is driven by the loader itself from the scroll
+            // velocity, see onScrollChanged(). The item manager's own
+            // threads only look up the element cache, one is enough.
+            ItemManager.Builder builder = new ItemManager.Builder(mLayoutLoader);
+            builder.setPreloadItemsEnabled(false);
             builder.setThreadPoolSize(1);
             setItemManager(builder.build());
+        } else {
+            mLayoutLoader = null;
+        }
+    }
+
+    private int getInflationPoolSize() {
+        final Resources res = getResources();
+        final int rowHeight = res.getDimensionPixelSize(R.dimen.tweet_profile_image_size) +
+                              2 * res.getDimensionPixelSize(R.dimen.tweet_padding);
+
+        // The list isn't laid out yet, assume it takes the whole screen.
+        final int rowsPerScreen = res.getDisplayMetrics().heightPixels / rowHeight + 1;
+        return rowsPerScreen * INFLATION_POOL_SCREENS;
+    }
+
+    /**
+     * Starts inflating rows in the background for presenters that are
+     * expensive to inflate, while the list is attached.
+     */
+    private void updateInflationPool() {
+        final boolean usePool = (mPresenterId == R.layout.tweet_composite_row &&
+                                 getWindowToken() != null);
+
+        if (mInflationPool != null && (!usePool || mInflationPool.getLayoutId() != mPresenterId)) {
+            mInflationPool.quit();
+            mInflationPool = null;
+        }
+
+        if (usePool && mInflationPool == null) {
+            mInflationPool = new ViewInflationPool(getContext(), mPresenterId, this);
+            mInflationPool.setTargetSize(getInflationPoolSize());
+        }
+
+        if (mTweetsAdapter != null) {
+            mTweetsAdapter.setInflationPool(mInflationPool);
         }
     }
 
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+
+        // AbsListView calls this on every scroll step and after each layout.
+        final int firstVisible = getFirstVisiblePosition();
+
+        final View firstChild = getChildAt(0);
+        final int firstTop = (firstChild != null ? firstChild.getTop() : 0);
+
+        final boolean moved = (firstVisible != mLastFirstVisible || firstTop != mLastFirstTop);
+        mLastFirstVisible = firstVisible;
+        mLastFirstTop = firstTop;
+
+        if (moved) {
+            updateScrolling();
+        }
+
+        if (mLayoutLoader != null && mTweetsAdapter != null) {
+            mLayoutLoader.onScroll(mTweetsAdapter, firstVisible, getChildCount(), moved);
+        }
+    }
+
+    /**
+     * Keeps the workers at their scrolling priority until the list
+     * stops moving.
+     */
+    private void updateScrolling() {
+        App.getInstance(getContext()).setScrolling(true);
+
+        removeCallbacks(mScrollEndRunnable);
+        postDelayed(mScrollEndRunnable, SCROLL_END_DELAY_MS);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (mLayoutLoader != null) {
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    mLayoutLoader.onTouchStarted();
+                    break;
+
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    mLayoutLoader.onTouchFinished();
+                    break;
+            }
+        }
+
+        return super.dispatchTouchEvent(event);
+    }
+
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
+        updateInflationPool();
 
         getViewTreeObserver().addOnGlobalLayoutListener(new OnGlobalLayoutListener() {
             @Override
@@ -80,14 +222,55 @@ public class TweetsListView extends AsyncListView {
                 updateTargetWidth();
                 updateItemLoader();
 
-                mTweetsAdapter = new TweetsAdapter(getContext(), mPresenterId);
-                setAdapter(mTweetsAdapter);
+                final TweetsAdapter adapter = new TweetsAdapter(getContext(), mPresenterId);
+                adapter.setInflationPool(mInflationPool);
+                mTweetsAdapter = adapter;
+
+                // The adapter is only set once the first screen is laid out,
+                // or the timeout expires, without blocking the UI thread.
+                final Runnable setAdapterRunnable = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mTweetsAdapter == adapter && getAdapter() != adapter) {
+                            setAdapter(adapter);
+                        }
+                    }
+                };
+
+                if (mLayoutLoader != null) {
+                    final int height = getHeight() - getPaddingTop() - getPaddingBottom();
+                    mLayoutLoader.prelayout(adapter, height, PRELAYOUT_TIMEOUT_MS,
+                                            setAdapterRunnable);
+                } else {
+                    setAdapterRunnable.run();
+                }
 
                 getViewTreeObserver().removeGlobalOnLayoutListener(this);
             }
         });
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mScrollEndRunnable);
+        App.getInstance(getContext()).setScrolling(false);
+
+        super.onDetachedFromWindow();
+
+        if (mInflationPool != null) {
+            mInflationPool.quit();
+            mInflationPool = null;
+        }
+
+        if (mTweetsAdapter != null) {
+            mTweetsAdapter.setInflationPool(null);
+        }
+
+        if (mLayoutLoader != null) {
+            mLayoutLoader.getImagePrefetcher().cancelAll();
+        }
+    }
+
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
         super.onLayout(changed, l, t, r, b);
@@ -108,5 +291,6 @@ public class TweetsListView extends AsyncListView {
         }
 
         updateItemLoader();
+        updateInflationPool();
     }
 }
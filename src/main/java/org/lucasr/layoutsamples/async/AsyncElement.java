@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.os.Build;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.canvas.UIElementHost;
+import org.lucasr.layoutsamples.canvas.UIElementWrapper;
+
+import java.util.EnumSet;
+
+/**
+ * Wraps an element that was measured and laid out ahead of time by an
+ * {@link AsyncElementFactory}. The wrapped element's geometry is never
+ * changed once it's wrapped and it's only ever reached through final
+ * fields, so instances can be handed between threads without locking.
+ */
+public class AsyncElement<T, E extends UIElement> extends UIElementWrapper {
+    // Hardware accelerated canvases ignore drawPicture() before Marshmallow.
+    private static final int HARDWARE_PICTURE_SDK_INT = 23;
+
+    private final AsyncElementFactory<T, E> mFactory;
+    private final long mVersion;
+    private final Picture mPicture;
+    private final long mCreationTime;
+    private final boolean mBuiltOnMainThread;
+    private final long mEstimatedBytes;
+    private volatile Bitmap mCell;
+    private UIElementHost mHost;
+
+    private final Paint mIndicatorPaint;
+    private final int mIndicatorSize;
+
+    public AsyncElement(AsyncElementFactory<T, E> factory, E element, long version,
+                        Picture picture) {
+        super(element);
+        mFactory = factory;
+        mVersion = version;
+        mPicture = picture;
+        mCreationTime = SystemClock.uptimeMillis();
+        mBuiltOnMainThread = (Looper.myLooper() == Looper.getMainLooper());
+        mEstimatedBytes = factory.onEstimateElementBytes(element) +
+                          ElementSizeEstimator.estimatePicture(picture);
+
+        mIndicatorPaint = new Paint();
+        mIndicatorSize = factory.getIndicatorSize();
+        mIndicatorPaint.setColor(factory.getIndicatorColor(mBuiltOnMainThread));
+    }
+
+    @SuppressWarnings("unchecked")
+    public E getElement() {
+        return (E) getWrappedElement();
+    }
+
+    /**
+     * Version of the item this element was built from.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Time, in {@link SystemClock#uptimeMillis()} time, at which this
+     * element was laid out.
+     */
+    public long getCreationTime() {
+        return mCreationTime;
+    }
+
+    public boolean isBuiltOnMainThread() {
+        return mBuiltOnMainThread;
+    }
+
+    /**
+     * Heap retained by the wrapped element, as estimated once when it
+     * was wrapped.
+     */
+    public long getEstimatedBytes() {
+        return mEstimatedBytes;
+    }
+
+    /**
+     * Captures the geometry of the wrapped element, see
+     * {@link AsyncElementFactory#onCaptureGeometry(UIElement, long)}.
+     */
+    ElementGeometry captureGeometry() {
+        return mFactory.onCaptureGeometry(getElement(), mVersion);
+    }
+
+    Picture getPicture() {
+        return mPicture;
+    }
+
+    Bitmap getCell() {
+        return mCell;
+    }
+
+    void setCell(Bitmap cell) {
+        mCell = cell;
+    }
+
+    /**
+     * Hands the cell back to the given pool. Must be called from the UI
+     * thread.
+     */
+    void releaseCell(BitmapCellPool cellPool) {
+        final Bitmap cell = mCell;
+        if (cell == null) {
+            return;
+        }
+
+        mCell = null;
+        cellPool.release(cell);
+
+        // Make sure the host stops drawing the bitmap before it's reused.
+        if (mHost != null) {
+            mHost.invalidate();
+        }
+    }
+
+    /**
+     * Loads the images for the given item that were deferred while the
+     * element was laid out. Must be called from the UI thread.
+     */
+    public void bind(T item, EnumSet<BindFlags> flags) {
+        mFactory.onLoadImages(getElement(), item, flags);
+    }
+
+    private boolean hasActiveDrawableState() {
+        if (mHost == null) {
+            return false;
+        }
+
+        for (int state : mHost.getDrawableState()) {
+            if (state == android.R.attr.state_pressed ||
+                state == android.R.attr.state_focused ||
+                state == android.R.attr.state_selected) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean canReplay(Canvas canvas) {
+        if (mPicture == null) {
+            return false;
+        }
+
+        if (canvas.isHardwareAccelerated() &&
+            Build.VERSION.SDK_INT < HARDWARE_PICTURE_SDK_INT) {
+            return false;
+        }
+
+        // The recording was made with the default state, draw live
+        // whenever the host is showing anything else.
+        return !hasActiveDrawableState();
+    }
+
+    @Override
+    public boolean swapHost(UIElementHost host) {
+        mHost = host;
+        return super.swapHost(host);
+    }
+
+    @Override
+    public void measure(int widthMeasureSpec, int heightMeasureSpec) {
+        // Do nothing, the wrapped UIElement is already measured.
+    }
+
+    @Override
+    public void layout(int left, int top, int right, int bottom) {
+        // Do nothing, the wrapped UIElement is already sized and positioned.
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final Bitmap cell = mCell;
+
+        if (cell != null && mFactory.isFlinging() && !hasActiveDrawableState()) {
+            canvas.drawBitmap(cell, 0, 0, null);
+            mFactory.onDrawDynamicContent(getElement(), canvas);
+        } else if (canReplay(canvas)) {
+            canvas.drawPicture(mPicture);
+            mFactory.onDrawDynamicContent(getElement(), canvas);
+        } else {
+            super.draw(canvas);
+        }
+
+        if (mIndicatorSize > 0) {
+            canvas.drawRect(0, 0, mIndicatorSize, mIndicatorSize, mIndicatorPaint);
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        // Do nothing, we never change the wrapped element's layout.
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.view.View;
+
+import org.lucasr.layoutsamples.app.App;
+import org.lucasr.layoutsamples.async.LayoutMetrics.Stage;
+import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.canvas.UIElementHost;
+import org.lucasr.layoutsamples.util.DebugOverlay.CacheState;
+
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures and lays out elements for items of type T off the UI thread.
+ * Subclasses define how items are keyed in the element cache, how new
+ * elements are created and bound, and how the images that are deferred
+ * while binding off the UI thread get loaded later.
+ */
+public abstract class AsyncElementFactory<T, E extends UIElement> {
+    public interface OnElementCreatedListener<T, E extends UIElement> {
+        public void onElementCreated(T item, AsyncElement<T, E> element);
+
+        /**
+         * Returns whether the listener still needs the element for the
+         * given item. Called from layout workers.
+         */
+        public boolean isWaitingForElement(T item);
+    }
+
+    // Rough footprint of a laid out element, used until one is laid out.
+    private static final long DEFAULT_ELEMENT_BYTES = 16 * 1024;
+
+    // Each layout worker gets its own headless host so that any number
+    // of them can build elements at the same time.
+    private static final ThreadLocal<HeadlessElementHost> sHeadlessHost =
+            new ThreadLocal<HeadlessElementHost>();
+
+    private static final LayoutResultPublisher sResultPublisher = new LayoutResultPublisher();
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Context mContext;
+
+    private volatile LayoutConfig mTargetConfig;
+    private volatile boolean mRecordingEnabled;
+
+    private volatile BitmapCellPool mCellPool;
+    private volatile boolean mFlinging;
+
+    // Elements holding a cell from the pool, released once the list settles.
+    private final ConcurrentLinkedQueue<AsyncElement<T, E>> mRasterizedElements =
+            new ConcurrentLinkedQueue<AsyncElement<T, E>>();
+
+    // Configuration the list is expected to have in the other orientation,
+    // or null if it's the same as the target one.
+    private volatile LayoutConfig mAlternateConfig;
+
+    // Size and colors of the marker drawn on elements to tell whether
+    // they were laid out on the UI thread, no marker if the size is 0.
+    private volatile int mIndicatorSize;
+    private volatile int mMainThreadIndicatorColor;
+    private volatile int mWorkerIndicatorColor;
+
+    // Used to estimate the height and footprint of elements that haven't
+    // been laid out yet.
+    private final AtomicLong mMeasuredHeightSum = new AtomicLong();
+    private final AtomicLong mEstimatedBytesSum = new AtomicLong();
+    private final AtomicLong mMeasuredCount = new AtomicLong();
+
+    protected AsyncElementFactory(Context context) {
+        mContext = context.getApplicationContext();
+        mTargetConfig = LayoutConfig.obtain(mContext.getResources(), 0);
+    }
+
+    /**
+     * Returns the key the element for the given item is cached with. Keys
+     * must be unique across all factories sharing the element cache.
+     */
+    protected abstract long getItemKey(T item);
+
+    /**
+     * Returns the version of the item's content. Cached elements built
+     * from a different version of an item are never returned.
+     */
+    protected abstract long getItemVersion(T item);
+
+    /**
+     * Creates an empty element attached to the given host. Called from
+     * layout worker threads.
+     */
+    protected abstract E onCreateElement(UIElementHost host);
+
+    /**
+     * Binds the given item to a newly created element, right before it's
+     * measured. Called from layout worker threads so images should not be
+     * loaded here, see {@link #onLoadImages(UIElement, Object, EnumSet)}.
+     */
+    protected abstract void onBindElement(E element, T item);
+
+    /**
+     * Loads the images that were deferred while binding the element.
+     * Called on the UI thread every time the element is displayed.
+     */
+    protected abstract void onLoadImages(E element, T item, EnumSet<BindFlags> flags);
+
+    /**
+     * Height to assume for items before any of them is measured.
+     */
+    protected abstract int getDefaultHeight();
+
+    /**
+     * Estimates the heap retained by a laid out element, see
+     * {@link ElementSizeEstimator}.
+     */
+    protected long onEstimateElementBytes(E element) {
+        return ElementSizeEstimator.estimate(element);
+    }
+
+    /**
+     * Starts loading the images that were deferred while the element was
+     * laid out through the given prefetcher, at the size the element
+     * shows them at. Called from the UI thread for items in the prefetch
+     * window.
+     */
+    protected void onPrefetchImages(E element, T item, int position,
+                                    ImagePrefetcher prefetcher) {
+    }
+
+    /**
+     * Captures the geometry of an element that is being evicted from the
+     * element cache, so that it can be rebuilt without being measured.
+     * Returns null if the element can't be restored from its geometry.
+     * Called from any thread.
+     */
+    protected ElementGeometry onCaptureGeometry(E element, long version) {
+        return ElementGeometry.capture(element, version);
+    }
+
+    /**
+     * Draws the parts of the element that don't change once it's bound.
+     * Called from layout workers to record them into a {@link Picture}
+     * when recording is enabled. Returns false if the element can't be
+     * recorded, in which case it's always drawn live.
+     */
+    protected boolean onDrawStaticContent(E element, Canvas canvas) {
+        return false;
+    }
+
+    /**
+     * Draws the parts of the element that were left out of
+     * {@link #onDrawStaticContent(UIElement, Canvas)}, on top of the
+     * recorded picture.
+     */
+    protected void onDrawDynamicContent(E element, Canvas canvas) {
+    }
+
+    protected AsyncElement<T, E> onWrapElement(E element, long version, Picture picture) {
+        return new AsyncElement<T, E>(this, element, version, picture);
+    }
+
+    public Context getContext() {
+        return mContext;
+    }
+
+    /**
+     * Marks the corner of new elements with a square of the given size,
+     * in one of the given colors depending on whether the element was
+     * laid out on the UI thread or on a worker. A size of 0 disables it.
+     */
+    public void setThreadIndicator(int size, int mainThreadColor, int workerColor) {
+        mIndicatorSize = size;
+        mMainThreadIndicatorColor = mainThreadColor;
+        mWorkerIndicatorColor = workerColor;
+    }
+
+    int getIndicatorSize() {
+        return mIndicatorSize;
+    }
+
+    int getIndicatorColor(boolean builtOnMainThread) {
+        return (builtOnMainThread ? mMainThreadIndicatorColor : mWorkerIndicatorColor);
+    }
+
+    /**
+     * Sets the width elements are laid out at, with the current font
+     * scale and density. Elements laid out for previous configurations
+     * stay in the cache until they're evicted, in case the list goes
+     * back to one of them.
+     */
+    public void setTargetWidth(int targetWidth) {
+        final Resources res = mContext.getResources();
+
+        // The list spans the whole screen width minus any horizontal
+        // decoration, which is the same in both orientations.
+        final DisplayMetrics metrics = res.getDisplayMetrics();
+        final int alternateWidth = targetWidth - metrics.widthPixels + metrics.heightPixels;
+
+        mTargetConfig = LayoutConfig.obtain(res, targetWidth);
+        mAlternateConfig = (alternateWidth > 0 && alternateWidth != targetWidth ?
+                            LayoutConfig.obtain(res, alternateWidth) : null);
+    }
+
+    public LayoutConfig getTargetConfig() {
+        return mTargetConfig;
+    }
+
+    /**
+     * Enables recording the static content of new elements into a picture
+     * that is replayed instead of walking the element tree on every draw.
+     */
+    public void setRecordingEnabled(boolean enabled) {
+        mRecordingEnabled = enabled;
+    }
+
+    public boolean isRecordingEnabled() {
+        return mRecordingEnabled;
+    }
+
+    /**
+     * Sets the pool elements are rasterized into while the list is
+     * flinging, or null to always draw them as elements.
+     */
+    public void setCellPool(BitmapCellPool cellPool) {
+        mCellPool = cellPool;
+    }
+
+    public BitmapCellPool getCellPool() {
+        return mCellPool;
+    }
+
+    /**
+     * While flinging, new elements are rasterized into bitmap cells and
+     * drawn as a single bitmap. When the fling ends all cells are handed
+     * back to the pool. Must be called from the UI thread.
+     */
+    public void setFlinging(boolean flinging) {
+        if (mFlinging == flinging) {
+            return;
+        }
+
+        mFlinging = flinging;
+
+        final BitmapCellPool cellPool = mCellPool;
+        if (!flinging && cellPool != null) {
+            AsyncElement<T, E> element;
+            while ((element = mRasterizedElements.poll()) != null) {
+                element.releaseCell(cellPool);
+            }
+        }
+    }
+
+    public boolean isFlinging() {
+        return mFlinging;
+    }
+
+    /**
+     * Returns true if the given item is laid out but not rasterized into
+     * a cell while it should be.
+     */
+    boolean needsCell(T item) {
+        if (!mFlinging || mCellPool == null) {
+            return false;
+        }
+
+        final AsyncElement<T, E> element = get(item);
+        return (element != null && element.getCell() == null);
+    }
+
+    /**
+     * Rasterizes the laid out element for the given item into a cell.
+     * Called from layout workers.
+     */
+    void rasterize(T item) {
+        final AsyncElement<T, E> element = get(item);
+        if (element != null) {
+            rasterize(element);
+        }
+    }
+
+    private void rasterize(final AsyncElement<T, E> element) {
+        final BitmapCellPool cellPool = mCellPool;
+        if (!mFlinging || cellPool == null || element.getCell() != null) {
+            return;
+        }
+
+        final Bitmap cell = cellPool.acquire(element.getMeasuredWidth(),
+                                             element.getMeasuredHeight());
+        if (cell == null) {
+            return;
+        }
+
+        // Only static content is rasterized, the element itself might be
+        // bound and drawn on the UI thread at the same time.
+        final Canvas canvas = new Canvas(cell);
+        final Picture picture = element.getPicture();
+        if (picture != null) {
+            canvas.drawPicture(picture);
+        } else if (!onDrawStaticContent(element.getElement(), canvas)) {
+            cellPool.release(cell);
+            return;
+        }
+
+        element.setCell(cell);
+        mRasterizedElements.add(element);
+
+        // The fling might have ended, and the rasterized elements been
+        // released, since the check above. Give the cell back unless the
+        // UI thread got to it first.
+        if (!mFlinging && mRasterizedElements.remove(element)) {
+            sMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    element.releaseCell(cellPool);
+                }
+            });
+        }
+    }
+
+    public UIElementCache getElementCache() {
+        return App.getInstance(mContext).getElementCache();
+    }
+
+    private static HeadlessElementHost getHeadlessHost(Context context) {
+        HeadlessElementHost host = sHeadlessHost.get();
+        if (host == null) {
+            host = new HeadlessElementHost(context);
+            sHeadlessHost.set(host);
+        }
+
+        return host;
+    }
+
+    /**
+     * Returns the element for the given item if it has already been
+     * laid out, null otherwise. Never measures.
+     */
+    public AsyncElement<T, E> get(T item) {
+        return get(item, mTargetConfig);
+    }
+
+    /**
+     * Prefetches the images of the given item at the given adapter
+     * position if its element is already laid out.
+     */
+    void prefetchImages(T item, int position, ImagePrefetcher prefetcher) {
+        final AsyncElement<T, E> element = get(item);
+        if (element != null) {
+            onPrefetchImages(element.getElement(), item, position, prefetcher);
+        }
+    }
+
+    /**
+     * Returns whether the element cache holds an up to date element for
+     * the given item, an outdated one or none at all.
+     */
+    public CacheState getCacheState(T item) {
+        final AsyncElement<?, ?> element =
+                (AsyncElement<?, ?>) getElementCache().get(getItemKey(item), mTargetConfig);
+
+        if (element == null) {
+            return CacheState.MISS;
+        }
+
+        return (element.getVersion() == getItemVersion(item) ? CacheState.HIT :
+                                                               CacheState.REBUILD);
+    }
+
+    /**
+     * Looks up the element for the given item, ignoring elements built
+     * from another version of it. Those get replaced once the item is
+     * laid out again.
+     */
+    @SuppressWarnings("unchecked")
+    private AsyncElement<T, E> get(T item, LayoutConfig config) {
+        final AsyncElement<T, E> element =
+                (AsyncElement<T, E>) getElementCache().get(getItemKey(item), config);
+
+        if (element == null || element.getVersion() != getItemVersion(item)) {
+            return null;
+        }
+
+        return element;
+    }
+
+    /**
+     * Lays out the element for the given item in the background, ahead
+     * of any pending prefetch, and delivers it on the UI thread in the
+     * next frame's batch. Dropped if the listener moves on to another
+     * item before the job runs.
+     */
+    public void createAsync(final T item, final OnElementCreatedListener<T, E> listener) {
+        final LayoutJobQueue jobQueue = App.getInstance(mContext).getLayoutJobQueue();
+
+        jobQueue.submitUrgent(getItemKey(item), new Runnable() {
+            @Override
+            public void run() {
+                if (!listener.isWaitingForElement(item)) {
+                    return;
+                }
+
+                final AsyncElement<T, E> element = create(item);
+                sResultPublisher.publish(item, element, listener);
+            }
+        });
+    }
+
+    /**
+     * Lays out the element for the given item at the width the list would
+     * have in the other orientation, behind all prefetch jobs. This way a
+     * rotation finds the visible and nearby items already laid out. The
+     * job is dropped once the item's position leaves the prefetch window.
+     */
+    public void createForAlternateWidthAsync(final T item, int position) {
+        final LayoutConfig alternateConfig = mAlternateConfig;
+        if (alternateConfig == null || get(item, alternateConfig) != null) {
+            return;
+        }
+
+        final App app = App.getInstance(mContext);
+        app.getLayoutJobQueue().submitBackground(getItemKey(item), position, new Runnable() {
+            @Override
+            public void run() {
+                // The orientation might have changed while this was queued.
+                if (alternateConfig == mAlternateConfig) {
+                    create(item, alternateConfig);
+                }
+            }
+        });
+    }
+
+    /**
+     * Average height of the elements laid out so far, or the default
+     * height if none was laid out yet.
+     */
+    public int getEstimatedHeight() {
+        final long count = mMeasuredCount.get();
+        if (count > 0) {
+            return (int) (mMeasuredHeightSum.get() / count);
+        }
+
+        return getDefaultHeight();
+    }
+
+    /**
+     * Average estimated footprint of the elements laid out so far, or a
+     * rough default if none was laid out yet.
+     */
+    public long getAverageElementBytes() {
+        final long count = mMeasuredCount.get();
+        if (count > 0) {
+            return mEstimatedBytesSum.get() / count;
+        }
+
+        return DEFAULT_ELEMENT_BYTES;
+    }
+
+    private Picture recordStaticContent(E element) {
+        final Picture picture = new Picture();
+
+        final Canvas canvas = picture.beginRecording(element.getMeasuredWidth(),
+                                                     element.getMeasuredHeight());
+        final boolean recorded = onDrawStaticContent(element, canvas);
+        picture.endRecording();
+
+        return (recorded ? picture : null);
+    }
+
+    public AsyncElement<T, E> create(T item) {
+        return create(item, mTargetConfig);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AsyncElement<T, E> create(T item, LayoutConfig config) {
+        final App app = App.getInstance(mContext);
+        final UIElementCache elementCache = app.getElementCache();
+        final LayoutMetrics metrics = app.getLayoutMetrics();
+        final long key = getItemKey(item);
+
+        // Read once, the item might be changed by another thread meanwhile.
+        final long version = getItemVersion(item);
+
+        AsyncElement<T, E> asyncElement =
+                (AsyncElement<T, E>) elementCache.get(key, config);
+        if (asyncElement != null && asyncElement.getVersion() == version) {
+            metrics.onCacheHit();
+            return asyncElement;
+        }
+
+        metrics.onCacheMiss(asyncElement != null);
+
+        final int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(config.getWidth(),
+                View.MeasureSpec.EXACTLY);
+        final int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0,
+                View.MeasureSpec.UNSPECIFIED);
+
+        long start = System.nanoTime();
+        final E element = onCreateElement(getHeadlessHost(mContext));
+        onBindElement(element, item);
+        start = recordStage(metrics, Stage.INFLATE, start);
+
+        // Elements evicted from the cache, or laid out in a previous run,
+        // leave their geometry behind. Restoring it skips measuring and
+        // breaking text into lines.
+        final ElementGeometry geometry = getGeometry(app, key, config);
+        if (geometry != null && geometry.getVersion() == version &&
+                geometry.restore(element)) {
+            metrics.onGeometryHit();
+        } else {
+            element.measure(widthMeasureSpec, heightMeasureSpec);
+        }
+        start = recordStage(metrics, Stage.MEASURE, start);
+
+        element.layout(0, 0, element.getMeasuredWidth(), element.getMeasuredHeight());
+        recordStage(metrics, Stage.LAYOUT, start);
+
+        Picture picture = null;
+        if (mRecordingEnabled) {
+            picture = recordStaticContent(element);
+        }
+
+        // All of the element's state is reachable from final fields of the
+        // wrapper, so it's safely published to any thread that sees it.
+        asyncElement = onWrapElement(element, version, picture);
+
+        // Elements for other configurations are not drawn any time soon.
+        if (config == mTargetConfig) {
+            rasterize(asyncElement);
+
+            mMeasuredHeightSum.addAndGet(element.getMeasuredHeight());
+            mEstimatedBytesSum.addAndGet(asyncElement.getEstimatedBytes());
+            mMeasuredCount.incrementAndGet();
+
+            app.getLayoutJobQueue().setEstimatedJobBytes(getAverageElementBytes());
+        }
+
+        start = System.nanoTime();
+        elementCache.put(key, config, asyncElement);
+        recordStage(metrics, Stage.CACHE_PUT, start);
+
+        return asyncElement;
+    }
+
+    private static ElementGeometry getGeometry(App app, long key, LayoutConfig config) {
+        final ElementGeometry geometry = app.getGeometryCache().get(key, config);
+        if (geometry != null) {
+            return geometry;
+        }
+
+        return app.getLayoutSnapshot().get(key, config);
+    }
+
+    /**
+     * Records the time elapsed since the given start and returns the
+     * current time, to be used as the start of the next stage.
+     */
+    private static long recordStage(LayoutMetrics metrics, Stage stage, long start) {
+        final long now = System.nanoTime();
+        metrics.record(stage, now - start);
+
+        return now;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.widget.Adapter;
+
+import org.lucasr.layoutsamples.app.App;
+import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.smoothie.SimpleItemLoader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pre-lays out elements for the items of a list through the given
+ * {@link AsyncElementFactory}, driven by the list's scroll state.
+ */
+public abstract class AsyncElementLoader<T> extends SimpleItemLoader<T, UIElement> {
+    // Screens laid out past the first one by prelayout().
+    private static final int PRELAYOUT_MARGIN_SCREENS = 1;
+
+    // Scroll velocity, in items per second, above which a released list
+    // is considered to be flinging.
+    private static final float FLING_VELOCITY_THRESHOLD = 20;
+
+    // Time without scroll steps after which the list is considered settled.
+    private static final long SETTLE_DELAY_MS = 150;
+
+    // Results of speculateItem().
+    static final int SPECULATE_SUBMITTED = 0;
+    static final int SPECULATE_CACHED = 1;
+    static final int SPECULATE_REJECTED = 2;
+
+    private final AsyncElementFactory<T, ?> mFactory;
+    private final LayoutJobQueue mLayoutJobQueue;
+    private final PrefetchWindow mPrefetchWindow;
+    private final IdleLayoutSpeculator mIdleSpeculator;
+    private final ImagePrefetcher mImagePrefetcher;
+
+    private final Handler mHandler;
+    private final Runnable mSettleRunnable;
+    private boolean mTouching;
+    private boolean mFlinging;
+
+    // Window whose items were last handed to prefetchItem(), only the
+    // items that enter the window after that are handed to it again.
+    private Adapter mScannedAdapter;
+    private int mScannedCount;
+    private int mScannedStart;
+    private int mScannedEnd;
+
+    public AsyncElementLoader(Context context, AsyncElementFactory<T, ?> factory) {
+        mFactory = factory;
+
+        final App app = App.getInstance(context);
+        mLayoutJobQueue = app.getLayoutJobQueue();
+        mPrefetchWindow = new PrefetchWindow(App.LAYOUT_WORKER_COUNT);
+        mIdleSpeculator = new IdleLayoutSpeculator(this, mPrefetchWindow, mLayoutJobQueue,
+                                                   App.LAYOUT_WORKER_COUNT);
+        mImagePrefetcher = new ImagePrefetcher(app.getPrefetchPicasso());
+
+        mHandler = new Handler(Looper.getMainLooper());
+        mSettleRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mFlinging = false;
+                mFactory.setFlinging(false);
+            }
+        };
+    }
+
+    UIElementCache getElementCache() {
+        return mFactory.getElementCache();
+    }
+
+    long getAverageElementBytes() {
+        return mFactory.getAverageElementBytes();
+    }
+
+    private void layoutItem(T item, int position, boolean alternateWidth) {
+        if (mFactory.get(item) == null) {
+            final long start = System.nanoTime();
+            mFactory.create(item);
+            mPrefetchWindow.onItemLaidOut(System.nanoTime() - start);
+        }
+
+        if (alternateWidth) {
+            mFactory.createForAlternateWidthAsync(item, position);
+        }
+    }
+
+    private void rasterizeItem(final T item, int position) {
+        mLayoutJobQueue.submit(mFactory.getItemKey(item), position, new Runnable() {
+            @Override
+            public void run() {
+                mFactory.rasterize(item);
+            }
+        });
+    }
+
+    /**
+     * Starts loading the images of a laid out item, unless that's already
+     * done or the item left the prefetch window meanwhile. Must be called
+     * from the UI thread.
+     */
+    private void prefetchImages(T item, int position) {
+        if (position < mPrefetchWindow.getStart() || position >= mPrefetchWindow.getEnd()) {
+            return;
+        }
+
+        if (!mImagePrefetcher.isPrefetched(mFactory.getItemKey(item))) {
+            mFactory.prefetchImages(item, position, mImagePrefetcher);
+        }
+    }
+
+    private void prefetchItem(final T item, final int position) {
+        if (mFactory.get(item) != null) {
+            if (mFactory.needsCell(item)) {
+                rasterizeItem(item, position);
+            }
+
+            // Items laid out by urgent jobs still miss their other width.
+            mFactory.createForAlternateWidthAsync(item, position);
+
+            prefetchImages(item, position);
+            return;
+        }
+
+        mLayoutJobQueue.submit(mFactory.getItemKey(item), position, new Runnable() {
+            @Override
+            public void run() {
+                layoutItem(item, position, true);
+
+                // Images are sized from the layout, so they can only be
+                // requested once it's done.
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        prefetchImages(item, position);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Queues a speculative layout for the item at the given position.
+     * Returns {@link #SPECULATE_CACHED} if the item is already laid out,
+     * and {@link #SPECULATE_REJECTED} if the queue is at capacity or
+     * already has a job for the item.
+     */
+    int speculateItem(Adapter adapter, int position) {
+        final T item = getItemParams(adapter, position);
+        if (mFactory.get(item) != null) {
+            return SPECULATE_CACHED;
+        }
+
+        final long key = mFactory.getItemKey(item);
+        final boolean submitted = mLayoutJobQueue.submitSpeculative(key, position, new Runnable() {
+            @Override
+            public void run() {
+                layoutItem(item, position, false);
+            }
+        });
+
+        return (submitted ? SPECULATE_SUBMITTED : SPECULATE_REJECTED);
+    }
+
+    /**
+     * Lays out the items that fill the first screen of a list with the
+     * given height, plus a screen of margin, in parallel on all layout
+     * workers. Never blocks: the given callback is run on the UI thread
+     * once all items are laid out, so that the first frame can be drawn
+     * entirely from the element cache, or once the given timeout expires,
+     * whichever comes first. Items not laid out by then are left running.
+     * Must be called from the UI thread.
+     */
+    public void prelayout(Adapter adapter, int viewportHeight, long timeoutMs,
+                          final Runnable onReady) {
+        final int estimatedHeight = Math.max(1, mFactory.getEstimatedHeight());
+        final int itemsPerScreen = viewportHeight / estimatedHeight + 1;
+
+        final int count = Math.min(adapter.getCount(),
+                                   itemsPerScreen * (1 + PRELAYOUT_MARGIN_SCREENS));
+        if (count <= 0) {
+            onReady.run();
+            return;
+        }
+
+        // Only touched on the UI thread.
+        final Runnable readyRunnable = new Runnable() {
+            private boolean mDone;
+
+            @Override
+            public void run() {
+                if (!mDone) {
+                    mDone = true;
+                    mHandler.removeCallbacks(this);
+                    onReady.run();
+                }
+            }
+        };
+
+        final AtomicInteger remaining = new AtomicInteger(count);
+        mHandler.postDelayed(readyRunnable, timeoutMs);
+
+        // Urgent jobs run in submission order, so the first screen is
+        // always laid out ahead of the margin.
+        for (int i = 0; i < count; i++) {
+            final T item = getItemParams(adapter, i);
+            final int position = i;
+            mLayoutJobQueue.submitUrgent(mFactory.getItemKey(item), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        layoutItem(item, position, true);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            mHandler.post(readyRunnable);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    public IdleLayoutSpeculator getIdleSpeculator() {
+        return mIdleSpeculator;
+    }
+
+    public ImagePrefetcher getImagePrefetcher() {
+        return mImagePrefetcher;
+    }
+
+    public void onTouchStarted() {
+        mTouching = true;
+        mFlinging = false;
+        mFactory.setFlinging(false);
+        mIdleSpeculator.onTouchStarted();
+    }
+
+    public void onTouchFinished() {
+        mTouching = false;
+        mIdleSpeculator.onTouchFinished();
+    }
+
+    /**
+     * Returns true if the list just started flinging.
+     */
+    private boolean updateFlinging(boolean moved) {
+        final float velocity = Math.abs(mPrefetchWindow.getVelocity());
+        final boolean flinging = (!mTouching && velocity >= FLING_VELOCITY_THRESHOLD);
+        final boolean started = (flinging && !mFlinging);
+
+        mFlinging = flinging;
+        mFactory.setFlinging(flinging);
+
+        if (moved) {
+            mHandler.removeCallbacks(mSettleRunnable);
+            mHandler.postDelayed(mSettleRunnable, SETTLE_DELAY_MS);
+        }
+
+        return started;
+    }
+
+    private void prefetchItems(Adapter adapter, int start, int end) {
+        for (int i = start; i < end; i++) {
+            prefetchItem(getItemParams(adapter, i), i);
+        }
+    }
+
+    /**
+     * Called on every scroll step, sizes the prefetch window from the
+     * current scroll velocity and queues layouts for the items in it.
+     * Queued layouts that are now outside the window are cancelled and,
+     * if the list actually moved, idle-time speculation is stopped. While
+     * flinging, laid out items in the window are also rasterized. Only
+     * the items that entered the window since the last call are queued,
+     * unless the adapter changed or a fling started.
+     */
+    public void onScroll(Adapter adapter, int firstVisible, int visibleCount, boolean moved) {
+        mIdleSpeculator.setAdapter(adapter);
+        if (moved) {
+            mIdleSpeculator.onScrolled();
+        }
+
+        final int itemCount = adapter.getCount();
+        mPrefetchWindow.onScroll(firstVisible, visibleCount, itemCount);
+        final boolean flingStarted = updateFlinging(moved);
+
+        final int start = mPrefetchWindow.getStart();
+        final int end = mPrefetchWindow.getEnd();
+
+        mLayoutJobQueue.updateWindow(firstVisible, visibleCount,
+                mPrefetchWindow.getDirection(), start, end);
+        mImagePrefetcher.retainWindow(start, end);
+
+        final boolean rescan = (flingStarted || adapter != mScannedAdapter ||
+                                itemCount != mScannedCount);
+        if (rescan || end <= mScannedStart || start >= mScannedEnd) {
+            prefetchItems(adapter, start, end);
+        } else {
+            prefetchItems(adapter, start, mScannedStart);
+            prefetchItems(adapter, mScannedEnd, end);
+        }
+
+        mScannedAdapter = adapter;
+        mScannedCount = itemCount;
+        mScannedStart = start;
+        mScannedEnd = end;
+    }
+
+    @Override
+    public UIElement loadItem(T item) {
+        // All layout goes through the job queue: visible items missing
+        // from the cache are laid out by urgent jobs once they're bound,
+        // the others by prefetching.
+        return mFactory.get(item);
+    }
+
+    @Override
+    public UIElement loadItemFromMemory(T item) {
+        return mFactory.get(item);
+    }
+
+    @Override
+    public void displayItem(View itemView, UIElement result, boolean fromMemory) {
+        // Do nothing as we're only using this loader to pre-measure/layout
+        // elements that are off screen.
+    }
+}
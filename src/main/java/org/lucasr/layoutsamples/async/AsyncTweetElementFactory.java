@@ -14,58 +14,109 @@
  * limitations under the License.
  */
 
+
 package org.lucasr.layoutsamples.async;
 
 import android.content.Context;
-import android.view.View;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.text.TextUtils;
 
-import org.lucasr.layoutsamples.adapter.TweetPresenter;
-import org.lucasr.layoutsamples.app.App;
 import org.lucasr.layoutsamples.adapter.Tweet;
+import org.lucasr.layoutsamples.adapter.TweetPresenter.UpdateFlags;
+import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.canvas.UIElementHost;
 import org.lucasr.layoutsamples.widget.TweetElement;
 
 import java.util.EnumSet;
 
-public class AsyncTweetElementFactory {
-    private AsyncTweetElementFactory() {
+public class AsyncTweetElementFactory extends AsyncElementFactory<Tweet, TweetElement> {
+    public AsyncTweetElementFactory(Context context) {
+        super(context);
+
+        final Resources res = context.getResources();
+        setThreadIndicator(res.getDimensionPixelSize(R.dimen.tweet_padding),
+                           res.getColor(R.color.tweet_on_main_thread),
+                           res.getColor(R.color.tweet_off_main_thread));
     }
 
-    private static int sTargetWidth;
-    private static HeadlessElementHost sHeadlessHost;
+    static EnumSet<BindFlags> toBindFlags(EnumSet<UpdateFlags> flags) {
+        final EnumSet<BindFlags> bindFlags = EnumSet.noneOf(BindFlags.class);
+        if (flags.contains(UpdateFlags.NO_IMAGE_LOADING)) {
+            bindFlags.add(BindFlags.NO_IMAGE_LOADING);
+        }
+
+        return bindFlags;
+    }
 
-    public synchronized static void setTargetWidth(Context context, int targetWidth) {
-        if (sTargetWidth == targetWidth) {
-            return;
+    private static EnumSet<UpdateFlags> toUpdateFlags(EnumSet<BindFlags> flags) {
+        final EnumSet<UpdateFlags> updateFlags = EnumSet.noneOf(UpdateFlags.class);
+        if (flags.contains(BindFlags.NO_IMAGE_LOADING)) {
+            updateFlags.add(UpdateFlags.NO_IMAGE_LOADING);
         }
 
-        sTargetWidth = targetWidth;
+        return updateFlags;
     }
 
-    public synchronized static AsyncTweetElement create(Context context, Tweet tweet) {
-        UIElementCache elementCache = App.getInstance(context).getElementCache();
+    @Override
+    protected long getItemKey(Tweet tweet) {
+        return tweet.getId();
+    }
 
-        AsyncTweetElement asyncElement = (AsyncTweetElement) elementCache.get(tweet.getId());
-        if (asyncElement != null) {
-            return asyncElement;
-        }
+    @Override
+    protected long getItemVersion(Tweet tweet) {
+        return tweet.getVersion();
+    }
 
-        final int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(sTargetWidth,
-                View.MeasureSpec.EXACTLY);
-        final int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0,
-                View.MeasureSpec.UNSPECIFIED);
+    @Override
+    protected TweetElement onCreateElement(UIElementHost host) {
+        return new TweetElement(host);
+    }
 
-        if (sHeadlessHost == null) {
-            sHeadlessHost = new HeadlessElementHost(context);
+    @Override
+    protected void onBindElement(TweetElement element, Tweet tweet) {
+        element.update(tweet, EnumSet.of(UpdateFlags.NO_IMAGE_LOADING));
+    }
+
+    @Override
+    protected void onLoadImages(TweetElement element, Tweet tweet, EnumSet<BindFlags> flags) {
+        final EnumSet<UpdateFlags> updateFlags = toUpdateFlags(flags);
+        element.loadProfileImage(tweet, updateFlags);
+
+        final boolean hasPostImage = !TextUtils.isEmpty(tweet.getPostImageUrl());
+        if (hasPostImage) {
+            element.loadPostImage(tweet, updateFlags);
         }
+    }
 
-        final TweetElement element = new TweetElement(sHeadlessHost);
-        element.update(tweet, EnumSet.of(TweetPresenter.UpdateFlags.NO_IMAGE_LOADING));
-        element.measure(widthMeasureSpec, heightMeasureSpec);
-        element.layout(0, 0, element.getMeasuredWidth(), element.getMeasuredHeight());
+    @Override
+    protected void onPrefetchImages(TweetElement element, Tweet tweet, int position,
+                                    ImagePrefetcher prefetcher) {
+        element.prefetchImages(tweet, getItemKey(tweet), position, prefetcher);
+    }
 
-        asyncElement = new AsyncTweetElement(element);
-        elementCache.put(tweet.getId(), asyncElement);
+    @Override
+    protected boolean onDrawStaticContent(TweetElement element, Canvas canvas) {
+        element.drawStaticContent(canvas);
+        return true;
+    }
+
+    @Override
+    protected void onDrawDynamicContent(TweetElement element, Canvas canvas) {
+        element.drawImages(canvas);
+    }
+
+    @Override
+    protected int getDefaultHeight() {
+        final Resources res = getContext().getResources();
+        return res.getDimensionPixelSize(R.dimen.tweet_profile_image_size) +
+               2 * res.getDimensionPixelSize(R.dimen.tweet_padding);
+    }
 
-        return asyncElement;
+    @Override
+    protected AsyncTweetElement onWrapElement(TweetElement element, long version,
+                                              Picture picture) {
+        return new AsyncTweetElement(this, element, version, picture);
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Paint;
+import android.text.TextPaint;
+
+import org.lucasr.layoutsamples.adapter.Tweet;
+import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.canvas.UIElementHost;
+import org.lucasr.layoutsamples.widget.TweetTextElement;
+
+import java.util.EnumSet;
+
+/**
+ * Builds the text layouts of {@link org.lucasr.layoutsamples.widget.TweetLayoutView}
+ * rows off the UI thread.
+ */
+public class AsyncTweetTextFactory extends AsyncElementFactory<Tweet, TweetTextElement> {
+    private volatile TextPaint mAuthorPaint;
+    private volatile TextPaint mMessagePaint;
+
+    public AsyncTweetTextFactory(Context context) {
+        super(context);
+
+        // Match what the row's text views get from their attributes until
+        // the real paints are set.
+        final Resources res = context.getResources();
+        mAuthorPaint = createTextPaint(res, R.dimen.tweet_author_text_size);
+        mMessagePaint = createTextPaint(res, R.dimen.tweet_message_text_size);
+    }
+
+    private static TextPaint createTextPaint(Resources res, int textSizeResId) {
+        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        paint.density = res.getDisplayMetrics().density;
+        paint.setTextSize(res.getDimensionPixelSize(textSizeResId));
+
+        return paint;
+    }
+
+    /**
+     * Sets the paints of the row's text views. Only affects layouts built
+     * after this call. Must be called from the UI thread.
+     */
+    public void setTextPaints(TextPaint authorPaint, TextPaint messagePaint) {
+        mAuthorPaint = new TextPaint(authorPaint);
+        mMessagePaint = new TextPaint(messagePaint);
+    }
+
+    @Override
+    protected long getItemKey(Tweet tweet) {
+        // Tweet ids are never negative, this keeps the keys apart from
+        // the ones used for tweet elements in the shared cache.
+        return ~tweet.getId();
+    }
+
+    @Override
+    protected long onEstimateElementBytes(TweetTextElement element) {
+        return ElementSizeEstimator.estimate(element) +
+               ElementSizeEstimator.estimateLayout(element.getAuthorLayout()) +
+               ElementSizeEstimator.estimateLayout(element.getMessageLayout());
+    }
+
+    @Override
+    protected ElementGeometry onCaptureGeometry(TweetTextElement element, long version) {
+        // The layouts themselves are handed to the row's text views.
+        return null;
+    }
+
+    @Override
+    protected long getItemVersion(Tweet tweet) {
+        return tweet.getVersion();
+    }
+
+    @Override
+    protected TweetTextElement onCreateElement(UIElementHost host) {
+        return new TweetTextElement(host, mAuthorPaint, mMessagePaint);
+    }
+
+    @Override
+    protected void onBindElement(TweetTextElement element, Tweet tweet) {
+        element.setText(tweet.getAuthorName(), tweet.getMessage());
+    }
+
+    @Override
+    protected void onLoadImages(TweetTextElement element, Tweet tweet,
+                                EnumSet<BindFlags> flags) {
+        // Images are loaded by the row itself.
+    }
+
+    @Override
+    protected int getDefaultHeight() {
+        final Resources res = getContext().getResources();
+        return res.getDimensionPixelSize(R.dimen.tweet_profile_image_size) +
+               2 * res.getDimensionPixelSize(R.dimen.tweet_padding);
+    }
+}
@@ -17,19 +17,34 @@
 package org.lucasr.layoutsamples.async;
 
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 
 import org.lucasr.layoutsamples.app.App;
 import org.lucasr.layoutsamples.adapter.Tweet;
 import org.lucasr.layoutsamples.adapter.TweetPresenter;
-import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.async.AsyncElementFactory.OnElementCreatedListener;
 import org.lucasr.layoutsamples.canvas.UIElementView;
+import org.lucasr.layoutsamples.util.DebugOverlay;
+import org.lucasr.layoutsamples.widget.TweetElement;
 
 import java.util.EnumSet;
 
-public class AsyncTweetView extends UIElementView implements TweetPresenter {
-    private Tweet mTweet;
+public class AsyncTweetView extends UIElementView implements TweetPresenter,
+        OnElementCreatedListener<Tweet, TweetElement> {
+    private final AsyncTweetElementFactory mFactory;
+    private final LayoutMetrics mMetrics;
+    private final DebugOverlay mDebugOverlay;
+
+    // Read by layout workers, see isWaitingForElement().
+    private volatile Tweet mTweet;
+    private EnumSet<UpdateFlags> mFlags;
+
+    private final boolean mPlaceholderOnCacheMiss;
+    private PlaceholderElement mPlaceholder;
 
     public AsyncTweetView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
@@ -37,15 +52,108 @@ public class AsyncTweetView extends UIElementView implements TweetPresenter {
 
     public AsyncTweetView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
+        final App app = App.getInstance(context);
+        mFactory = app.getTweetElementFactory();
+        mMetrics = app.getLayoutMetrics();
+        mDebugOverlay = new DebugOverlay(this);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.AsyncTweetView,
+                                                      defStyleAttr, 0);
+        mPlaceholderOnCacheMiss =
+                a.getBoolean(R.styleable.AsyncTweetView_placeholderOnCacheMiss, false);
+        a.recycle();
+    }
+
+    private void bindPlaceholder(Tweet tweet) {
+        if (mPlaceholder == null) {
+            mPlaceholder = new PlaceholderElement(this);
+        }
+        mPlaceholder.setEstimatedHeight(mFactory.getEstimatedHeight());
+        setUIElement(mPlaceholder);
+
+        mFactory.createAsync(tweet, this);
     }
 
     @Override
     public void update(Tweet tweet, EnumSet<UpdateFlags> flags) {
+        final long start = System.nanoTime();
+        try {
+            updateElement(tweet, flags);
+        } finally {
+            mMetrics.record(LayoutMetrics.Stage.BIND, System.nanoTime() - start);
+        }
+    }
+
+    private void updateElement(Tweet tweet, EnumSet<UpdateFlags> flags) {
         mTweet = tweet;
+        mFlags = flags;
+
+        if (DebugOverlay.isEnabled()) {
+            mDebugOverlay.setCacheState(mFactory.getCacheState(tweet));
+            mDebugOverlay.clearCreationTime();
+        }
+
+        final AsyncElement<Tweet, TweetElement> element;
+        if (mPlaceholderOnCacheMiss) {
+            element = mFactory.get(tweet);
+            if (element == null) {
+                bindPlaceholder(tweet);
+                return;
+            }
+        } else {
+            element = mFactory.create(tweet);
+        }
+
+        setElement(element, flags);
+    }
+
+    private void setElement(AsyncElement<Tweet, TweetElement> element,
+                            EnumSet<UpdateFlags> flags) {
+        mDebugOverlay.setCreationTime(element.getCreationTime(),
+                                      element.isBuiltOnMainThread());
 
-        final AsyncTweetElement element = AsyncTweetElementFactory.create(getContext(), tweet);
         setUIElement(element);
+        element.bind(mTweet, AsyncTweetElementFactory.toBindFlags(flags));
+    }
+
+    @Override
+    public void onElementCreated(Tweet tweet, AsyncElement<Tweet, TweetElement> element) {
+        // The view might have been recycled for another tweet, or another
+        // version of the same tweet, meanwhile.
+        if (!tweet.equals(mTweet) || element.getVersion() != mTweet.getVersion() ||
+                getUIElement() != mPlaceholder) {
+            return;
+        }
+
+        setElement(element, mFlags);
+    }
+
+    @Override
+    public boolean isWaitingForElement(Tweet tweet) {
+        // Rows recycled for another tweet meanwhile don't need it anymore.
+        return tweet.equals(mTweet);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final long start = mDebugOverlay.begin();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        mDebugOverlay.endMeasure(start);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        final long start = mDebugOverlay.begin();
+        super.onLayout(changed, left, top, right, bottom);
+        mDebugOverlay.endLayout(start);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final long start = mDebugOverlay.begin();
+        super.draw(canvas);
+        mDebugOverlay.endDraw(start);
 
-        element.update(tweet, flags);
+        mDebugOverlay.draw(canvas);
     }
 }
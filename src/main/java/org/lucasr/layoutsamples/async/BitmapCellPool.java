@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Pool of bitmaps that elements are rasterized into. All bitmaps handed
+ * out by the pool, in use or not, are accounted against a byte budget.
+ * Released bitmaps are reused for cells of the same size or, on KitKat
+ * and later, for any cell that fits in their allocation.
+ */
+public class BitmapCellPool {
+    private static final Bitmap.Config CELL_CONFIG = Bitmap.Config.ARGB_8888;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final long mMaxBytes;
+    private final LinkedList<Bitmap> mFreeBitmaps;
+    private long mAllocatedBytes;
+
+    public BitmapCellPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+        mFreeBitmaps = new LinkedList<Bitmap>();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean canReconfigure(Bitmap bitmap, int width, int height) {
+        return (bitmap.getAllocationByteCount() >= width * height * BYTES_PER_PIXEL);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(Bitmap bitmap, int width, int height) {
+        bitmap.reconfigure(width, height, CELL_CONFIG);
+    }
+
+    private static long getBitmapBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return getAllocationByteCount(bitmap);
+        }
+
+        return bitmap.getByteCount();
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static long getAllocationByteCount(Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    private Bitmap takeReusable(int width, int height) {
+        final boolean canReconfigure = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT);
+
+        final Iterator<Bitmap> it = mFreeBitmaps.iterator();
+        while (it.hasNext()) {
+            final Bitmap bitmap = it.next();
+
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                it.remove();
+                return bitmap;
+            }
+
+            if (canReconfigure && canReconfigure(bitmap, width, height)) {
+                it.remove();
+                reconfigure(bitmap, width, height);
+                return bitmap;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a cleared bitmap of the given size, or null if there's no
+     * room left for it in the budget.
+     */
+    public synchronized Bitmap acquire(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        final Bitmap reusable = takeReusable(width, height);
+        if (reusable != null) {
+            reusable.eraseColor(Color.TRANSPARENT);
+            return reusable;
+        }
+
+        final long bytes = (long) width * height * BYTES_PER_PIXEL;
+
+        // Free bitmaps that couldn't be reused only take up room.
+        while (mAllocatedBytes + bytes > mMaxBytes && !mFreeBitmaps.isEmpty()) {
+            final Bitmap bitmap = mFreeBitmaps.removeFirst();
+            mAllocatedBytes -= getBitmapBytes(bitmap);
+            bitmap.recycle();
+        }
+
+        if (mAllocatedBytes + bytes > mMaxBytes) {
+            return null;
+        }
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, CELL_CONFIG);
+        mAllocatedBytes += getBitmapBytes(bitmap);
+
+        return bitmap;
+    }
+
+    /**
+     * Hands a bitmap back to the pool. It must no longer be drawn anywhere.
+     */
+    public synchronized void release(Bitmap bitmap) {
+        mFreeBitmaps.addLast(bitmap);
+    }
+
+    /**
+     * Recycles all bitmaps that are not in use.
+     */
+    public synchronized void trim() {
+        for (Bitmap bitmap : mFreeBitmaps) {
+            mAllocatedBytes -= getBitmapBytes(bitmap);
+            bitmap.recycle();
+        }
+
+        mFreeBitmaps.clear();
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import org.lucasr.layoutsamples.canvas.AbstractUIElement;
+import org.lucasr.layoutsamples.canvas.TextElement;
+import org.lucasr.layoutsamples.canvas.TextLines;
+import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.canvas.UIElementGroup;
+import org.lucasr.layoutsamples.canvas.UIElementWrapper;
+
+/**
+ * Measured geometry of a laid out element tree, packed in a single int
+ * array: the measured dimension of each element, in depth-first order,
+ * and the line breaks of each text element. An element tree built and
+ * bound the same way can be restored from it and laid out without being
+ * measured, see {@link AsyncElementFactory#onCaptureGeometry(UIElement, long)}.
+ */
+public final class ElementGeometry {
+    // Object header, fields and array header.
+    private static final int OVERHEAD_BYTES = 48;
+
+    // Marks elements that have no text lines.
+    private static final int NO_LINES = -1;
+
+    private final long mVersion;
+    private final int[] mData;
+
+    ElementGeometry(long version, int[] data) {
+        mVersion = version;
+        mData = data;
+    }
+
+    /**
+     * Captures the geometry of the given measured element tree. Returns
+     * null if any element in it can't be restored later.
+     */
+    public static ElementGeometry capture(UIElement element, long version) {
+        final Builder builder = new Builder();
+        if (!builder.add(element)) {
+            return null;
+        }
+
+        return new ElementGeometry(version, builder.toArray());
+    }
+
+    /**
+     * Version of the item the geometry was captured from.
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    int[] getData() {
+        return mData;
+    }
+
+    /**
+     * Approximate heap retained by this geometry.
+     */
+    public int getBytes() {
+        return OVERHEAD_BYTES + 4 * mData.length;
+    }
+
+    /**
+     * Sets the measured dimension and text lines of the given element
+     * tree, which must be bound but not measured. Returns false if the
+     * tree doesn't have the structure the geometry was captured from,
+     * in which case it has to be measured.
+     */
+    public boolean restore(UIElement element) {
+        return (restore(element, 0) == mData.length);
+    }
+
+    /**
+     * Restores the element at the given index and its children, returning
+     * the index past them or -1 if they don't match.
+     */
+    private int restore(UIElement element, int index) {
+        while (element instanceof UIElementWrapper) {
+            element = ((UIElementWrapper) element).getWrappedElement();
+        }
+
+        if (!(element instanceof AbstractUIElement) || index + 3 > mData.length) {
+            return -1;
+        }
+
+        final int width = mData[index++];
+        final int height = mData[index++];
+        final int lineCount = mData[index++];
+
+        if (element instanceof TextElement) {
+            if (lineCount < 0 || index + lineCount * TextLines.INTS_PER_LINE > mData.length) {
+                return -1;
+            }
+
+            ((TextElement) element).setPrecomputedLines(
+                    new TextLines(mData, index, lineCount));
+            index += lineCount * TextLines.INTS_PER_LINE;
+        } else if (lineCount != NO_LINES) {
+            return -1;
+        }
+
+        ((AbstractUIElement) element).setPrecomputedMeasuredDimension(width, height);
+
+        if (element instanceof UIElementGroup) {
+            final UIElementGroup group = (UIElementGroup) element;
+
+            final int count = group.getElementCount();
+            for (int i = 0; i < count && index >= 0; i++) {
+                index = restore(group.getElementAt(i), index);
+            }
+        }
+
+        return index;
+    }
+
+    private static class Builder {
+        private int[] mData = new int[64];
+        private int mSize;
+
+        private void ensureCapacity(int extra) {
+            if (mSize + extra > mData.length) {
+                final int[] data = new int[Math.max(mData.length * 2, mSize + extra)];
+                System.arraycopy(mData, 0, data, 0, mSize);
+                mData = data;
+            }
+        }
+
+        boolean add(UIElement element) {
+            while (element instanceof UIElementWrapper) {
+                element = ((UIElementWrapper) element).getWrappedElement();
+            }
+
+            if (!(element instanceof AbstractUIElement)) {
+                return false;
+            }
+
+            ensureCapacity(3);
+            mData[mSize++] = element.getMeasuredWidth();
+            mData[mSize++] = element.getMeasuredHeight();
+
+            if (element instanceof TextElement) {
+                final TextLines lines = ((TextElement) element).getTextLines();
+                if (lines == null) {
+                    return false;
+                }
+
+                final int lineCount = lines.getLineCount();
+                mData[mSize++] = lineCount;
+
+                ensureCapacity(lineCount * TextLines.INTS_PER_LINE);
+                lines.copyTo(mData, mSize);
+                mSize += lineCount * TextLines.INTS_PER_LINE;
+            } else {
+                mData[mSize++] = NO_LINES;
+            }
+
+            if (element instanceof UIElementGroup) {
+                final UIElementGroup group = (UIElementGroup) element;
+
+                final int count = group.getElementCount();
+                for (int i = 0; i < count; i++) {
+                    if (!add(group.getElementAt(i))) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+
+        int[] toArray() {
+            final int[] data = new int[mSize];
+            System.arraycopy(mData, 0, data, 0, mSize);
+            return data;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import org.lucasr.layoutsamples.util.LongLruCache;
+
+/**
+ * Second tier of the {@link UIElementCache}, holding the geometry of
+ * elements evicted from it up to a budget in bytes. Geometry is a small
+ * fraction of an element's footprint, so a lot more items fit in here.
+ * Keyed the same way as the element cache.
+ */
+public class ElementGeometryCache extends LongLruCache<ElementGeometry> {
+    public ElementGeometryCache(long maxBytes) {
+        super(maxBytes);
+    }
+
+    public ElementGeometry get(long id, LayoutConfig config) {
+        return get(id, config.getId());
+    }
+
+    public ElementGeometry put(long id, LayoutConfig config, ElementGeometry geometry) {
+        return put(id, config.getId(), geometry);
+    }
+
+    @Override
+    protected int sizeOf(long id, int configId, ElementGeometry geometry) {
+        return geometry.getBytes();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import android.graphics.Picture;
+import android.graphics.drawable.Drawable;
+import android.text.Layout;
+
+import org.lucasr.layoutsamples.canvas.ImageElement;
+import org.lucasr.layoutsamples.canvas.TextElement;
+import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.canvas.UIElementGroup;
+import org.lucasr.layoutsamples.canvas.UIElementWrapper;
+
+/**
+ * Estimates how much heap an element tree retains. Bitmaps are not
+ * counted as they're owned by the resources and image caches.
+ */
+public final class ElementSizeEstimator {
+    // Object header and fields of an element, including its layout params.
+    private static final int ELEMENT_BYTES = 96;
+
+    // Each element has its bounds and padding rects, images also have
+    // two RectF used to compute their draw matrix.
+    private static final int RECT_BYTES = 32;
+
+    // Java object plus the native matrix.
+    private static final int MATRIX_BYTES = 64;
+
+    // Drawable object and its constant state, without any bitmap.
+    private static final int DRAWABLE_BYTES = 64;
+
+    // Fixed cost of a text layout, and cost of each of its lines:
+    // line starts, tops, descents, directions and ellipsis info.
+    private static final int LAYOUT_BYTES = 128;
+    private static final int LAYOUT_LINE_BYTES = 40;
+
+    // Fixed cost of a recorded picture. Its drawing ops grow with how
+    // much is drawn, which is approximated by the recorded area.
+    private static final int PICTURE_BYTES = 256;
+    private static final int PICTURE_PIXELS_PER_BYTE = 64;
+
+    private ElementSizeEstimator() {
+    }
+
+    public static long estimate(UIElement element) {
+        if (element instanceof UIElementWrapper) {
+            return ELEMENT_BYTES +
+                   estimate(((UIElementWrapper) element).getWrappedElement());
+        }
+
+        long bytes = ELEMENT_BYTES + 2 * RECT_BYTES;
+
+        if (element instanceof UIElementGroup) {
+            final UIElementGroup group = (UIElementGroup) element;
+
+            final int count = group.getElementCount();
+            for (int i = 0; i < count; i++) {
+                bytes += estimate(group.getElementAt(i));
+            }
+        } else if (element instanceof TextElement) {
+            bytes += estimateLayout(((TextElement) element).getLayout());
+        } else if (element instanceof ImageElement) {
+            bytes += 2 * MATRIX_BYTES + 2 * RECT_BYTES;
+            bytes += estimateDrawable(((ImageElement) element).getDrawable());
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Estimates the heap retained by a text layout, including its text.
+     */
+    public static long estimateLayout(Layout layout) {
+        if (layout == null) {
+            return 0;
+        }
+
+        return LAYOUT_BYTES + (long) layout.getLineCount() * LAYOUT_LINE_BYTES +
+               2L * layout.getText().length();
+    }
+
+    /**
+     * Estimates the heap retained by a recorded picture.
+     */
+    public static long estimatePicture(Picture picture) {
+        if (picture == null) {
+            return 0;
+        }
+
+        return PICTURE_BYTES +
+               (long) picture.getWidth() * picture.getHeight() / PICTURE_PIXELS_PER_BYTE;
+    }
+
+    private static long estimateDrawable(Drawable drawable) {
+        return (drawable != null ? DRAWABLE_BYTES : 0);
+    }
+}
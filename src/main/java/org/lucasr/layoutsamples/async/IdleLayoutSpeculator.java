@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.widget.Adapter;
+
+/**
+ * Keeps filling the element cache outward from the prefetch window while
+ * the UI thread is idle, alternating between the items below and above
+ * it, until the memory budget is used up. Stops as soon as the user
+ * touches or scrolls the list.
+ */
+public class IdleLayoutSpeculator implements MessageQueue.IdleHandler,
+        LayoutJobQueue.OnDrainedListener {
+    // How long the list has to stay still before we start speculating.
+    private static final long IDLE_DELAY_MS = 300;
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256 * 1024;
+
+    private final AsyncElementLoader<?> mLoader;
+    private final PrefetchWindow mPrefetchWindow;
+    private final LayoutJobQueue mLayoutJobQueue;
+    private final int mBatchSize;
+
+    private final Handler mHandler;
+    private final Runnable mStartRunnable;
+    private final Runnable mWakeRunnable;
+
+    private boolean mEnabled = true;
+    private long mMemoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    private Adapter mAdapter;
+    private boolean mTouching;
+    private boolean mRegistered;
+
+    private int mNextBelow;
+    private int mNextAbove;
+
+    // Position that couldn't be queued last time, retried first.
+    private int mRetryPosition;
+    private boolean mTakeBelow;
+    private int mSpeculatedCount;
+    private int mMaxSpeculated;
+
+    IdleLayoutSpeculator(AsyncElementLoader<?> loader, PrefetchWindow prefetchWindow,
+                         LayoutJobQueue layoutJobQueue, int batchSize) {
+        mLoader = loader;
+        mPrefetchWindow = prefetchWindow;
+        mLayoutJobQueue = layoutJobQueue;
+        mBatchSize = Math.max(1, batchSize);
+
+        mHandler = new Handler(Looper.getMainLooper());
+
+        mStartRunnable = new Runnable() {
+            @Override
+            public void run() {
+                start();
+            }
+        };
+
+        mWakeRunnable = new Runnable() {
+            @Override
+            public void run() {
+                // Nothing to do, this only makes the looper go idle
+                // again once the queued jobs are done.
+            }
+        };
+    }
+
+    public void setEnabled(boolean enabled) {
+        if (mEnabled == enabled) {
+            return;
+        }
+
+        mEnabled = enabled;
+        if (!mEnabled) {
+            stop();
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * Sets the estimated amount of memory, in bytes, that speculative
+     * layouts may take in the element cache.
+     */
+    public void setMemoryBudget(long bytes) {
+        mMemoryBudget = bytes;
+    }
+
+    public long getMemoryBudget() {
+        return mMemoryBudget;
+    }
+
+    void setAdapter(Adapter adapter) {
+        mAdapter = adapter;
+    }
+
+    void onTouchStarted() {
+        mTouching = true;
+        stop();
+    }
+
+    void onTouchFinished() {
+        mTouching = false;
+        scheduleStart();
+    }
+
+    void onScrolled() {
+        stop();
+        if (!mTouching) {
+            scheduleStart();
+        }
+    }
+
+    private void scheduleStart() {
+        mHandler.removeCallbacks(mStartRunnable);
+        if (mEnabled) {
+            mHandler.postDelayed(mStartRunnable, IDLE_DELAY_MS);
+        }
+    }
+
+    private void start() {
+        if (!mEnabled || mTouching || mAdapter == null || mRegistered) {
+            return;
+        }
+
+        mNextBelow = mPrefetchWindow.getEnd();
+        mNextAbove = mPrefetchWindow.getStart() - 1;
+        mRetryPosition = -1;
+        mTakeBelow = (mPrefetchWindow.getDirection() > 0);
+        mSpeculatedCount = 0;
+
+        // Never speculate so much that we'd evict the window itself.
+        final long elementBytes = Math.max(1, mLoader.getAverageElementBytes());
+        final int windowSize = mPrefetchWindow.getEnd() - mPrefetchWindow.getStart();
+        final long cacheSlack = mLoader.getElementCache().maxSize() - windowSize * elementBytes;
+        mMaxSpeculated = (int) (Math.min(cacheSlack, mMemoryBudget) / elementBytes);
+
+        if (mMaxSpeculated <= 0) {
+            return;
+        }
+
+        Looper.myQueue().addIdleHandler(this);
+        mLayoutJobQueue.addOnDrainedListener(this);
+        mRegistered = true;
+    }
+
+    private void stop() {
+        mHandler.removeCallbacks(mStartRunnable);
+
+        if (mRegistered) {
+            Looper.myQueue().removeIdleHandler(this);
+            onUnregistered();
+        }
+
+        mLayoutJobQueue.cancelSpeculative();
+    }
+
+    private void onUnregistered() {
+        mLayoutJobQueue.removeOnDrainedListener(this);
+        mRegistered = false;
+    }
+
+    private int nextPosition() {
+        if (mRetryPosition >= 0) {
+            final int position = mRetryPosition;
+            mRetryPosition = -1;
+            return position;
+        }
+
+        final boolean hasBelow = (mNextBelow < mAdapter.getCount());
+        final boolean hasAbove = (mNextAbove >= 0);
+
+        if (!hasBelow && !hasAbove) {
+            return -1;
+        }
+
+        final boolean takeBelow = hasBelow && (mTakeBelow || !hasAbove);
+        mTakeBelow = !mTakeBelow;
+
+        return (takeBelow ? mNextBelow++ : mNextAbove--);
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (mTouching) {
+            onUnregistered();
+            return false;
+        }
+
+        // Wait for all queued jobs to finish so that speculative work
+        // never piles up in front of prefetch work, see onDrained().
+        if (mLayoutJobQueue.getQueuedCount() > 0) {
+            return true;
+        }
+
+        int submitted = 0;
+        while (submitted < mBatchSize) {
+            final int position = nextPosition();
+            if (position < 0 || mSpeculatedCount >= mMaxSpeculated) {
+                onUnregistered();
+                return false;
+            }
+
+            final int result = mLoader.speculateItem(mAdapter, position);
+            if (result == AsyncElementLoader.SPECULATE_REJECTED) {
+                // Retry the same position once the queue drains instead
+                // of walking the whole adapter.
+                mRetryPosition = position;
+                break;
+            }
+
+            if (result == AsyncElementLoader.SPECULATE_SUBMITTED) {
+                mSpeculatedCount++;
+                submitted++;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public void onDrained() {
+        // Runs on the layout worker that finished the last job. Any
+        // message makes the looper go idle again once it's handled.
+        mHandler.post(mWakeRunnable);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.support.v4.util.LongSparseArray;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+import org.lucasr.layoutsamples.canvas.ImageElement;
+import org.lucasr.layoutsamples.util.ImageUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches and decodes the images of pre-laid out items into the shared
+ * memory cache, at the size of the elements that will show them, so
+ * that binding the items later finds them ready. Requests are tracked
+ * per item and dropped once the item leaves the prefetch window.
+ * Must only be used from the UI thread.
+ */
+public class ImagePrefetcher {
+    private final Picasso mPicasso;
+
+    // Picasso only keeps weak references to targets, the requests for
+    // each item are kept here until they're done or cancelled.
+    private final LongSparseArray<ItemRequests> mRequests;
+
+    public ImagePrefetcher(Picasso picasso) {
+        mPicasso = picasso;
+        mRequests = new LongSparseArray<ItemRequests>();
+    }
+
+    /**
+     * Returns whether images were already prefetched for the item with
+     * the given key since it entered the prefetch window.
+     */
+    public boolean isPrefetched(long key) {
+        return (mRequests.get(key) != null);
+    }
+
+    /**
+     * Starts loading the image at the given url for the given element
+     * of the item with the given key, at the adapter position. The
+     * element must already be laid out.
+     */
+    public void prefetch(long key, int position, ImageElement element, String url) {
+        ItemRequests itemRequests = mRequests.get(key);
+        if (itemRequests == null) {
+            itemRequests = new ItemRequests(position);
+            mRequests.put(key, itemRequests);
+        }
+
+        final PrefetchTarget target = new PrefetchTarget(itemRequests);
+        itemRequests.targets.add(target);
+
+        ImageUtils.createRequest(mPicasso, element, url).into(target);
+    }
+
+    /**
+     * Cancels the requests of all items outside the given range of
+     * adapter positions.
+     */
+    public void retainWindow(int start, int end) {
+        for (int i = mRequests.size() - 1; i >= 0; i--) {
+            final ItemRequests itemRequests = mRequests.valueAt(i);
+            if (itemRequests.position < start || itemRequests.position >= end) {
+                cancel(itemRequests);
+                mRequests.removeAt(i);
+            }
+        }
+    }
+
+    public void cancelAll() {
+        for (int i = 0; i < mRequests.size(); i++) {
+            cancel(mRequests.valueAt(i));
+        }
+
+        mRequests.clear();
+    }
+
+    private void cancel(ItemRequests itemRequests) {
+        for (PrefetchTarget target : itemRequests.targets) {
+            mPicasso.cancelRequest(target);
+        }
+
+        itemRequests.targets.clear();
+    }
+
+    private static final class ItemRequests {
+        final int position;
+        final List<PrefetchTarget> targets;
+
+        ItemRequests(int position) {
+            this.position = position;
+            this.targets = new ArrayList<PrefetchTarget>(2);
+        }
+    }
+
+    private static final class PrefetchTarget implements Target {
+        private final ItemRequests mItemRequests;
+
+        PrefetchTarget(ItemRequests itemRequests) {
+            mItemRequests = itemRequests;
+        }
+
+        @Override
+        public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
+            // Nothing to do, the bitmap is now in the memory cache.
+            mItemRequests.targets.remove(this);
+        }
+
+        @Override
+        public void onBitmapFailed(Drawable drawable) {
+            mItemRequests.targets.remove(this);
+        }
+
+        @Override
+        public void onPrepareLoad(Drawable drawable) {
+        }
+    }
+}
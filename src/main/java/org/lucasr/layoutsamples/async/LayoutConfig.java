@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import android.content.res.Resources;
+import android.util.DisplayMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Everything, besides the item itself, that an element's layout depends
+ * on. Configurations are interned so that each one gets a small id that
+ * can be used in cache keys.
+ */
+public final class LayoutConfig {
+    private static final ConcurrentHashMap<LayoutConfig, LayoutConfig> sConfigs =
+            new ConcurrentHashMap<LayoutConfig, LayoutConfig>();
+    private static final ConcurrentHashMap<Integer, LayoutConfig> sConfigsById =
+            new ConcurrentHashMap<Integer, LayoutConfig>();
+    private static final AtomicInteger sNextId = new AtomicInteger();
+
+    private final int mWidth;
+    private final float mFontScale;
+    private final int mDensityDpi;
+    private final int mId;
+
+    private LayoutConfig(int width, float fontScale, int densityDpi) {
+        mWidth = width;
+        mFontScale = fontScale;
+        mDensityDpi = densityDpi;
+        mId = sNextId.getAndIncrement();
+    }
+
+    public static LayoutConfig obtain(int width, float fontScale, int densityDpi) {
+        final LayoutConfig config = new LayoutConfig(width, fontScale, densityDpi);
+
+        final LayoutConfig existing = sConfigs.putIfAbsent(config, config);
+        if (existing != null) {
+            return existing;
+        }
+
+        sConfigsById.put(config.mId, config);
+        return config;
+    }
+
+    /**
+     * Returns the configuration with the given id, or null if no
+     * configuration with that id was obtained in this process.
+     */
+    public static LayoutConfig fromId(int id) {
+        return sConfigsById.get(id);
+    }
+
+    /**
+     * Returns the configuration for laying out elements at the given
+     * width with the given resources' current font scale and density.
+     */
+    public static LayoutConfig obtain(Resources res, int width) {
+        final DisplayMetrics metrics = res.getDisplayMetrics();
+        return obtain(width, res.getConfiguration().fontScale, metrics.densityDpi);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public float getFontScale() {
+        return mFontScale;
+    }
+
+    public int getDensityDpi() {
+        return mDensityDpi;
+    }
+
+    /**
+     * Unique id of this configuration within the process.
+     */
+    public int getId() {
+        return mId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof LayoutConfig)) {
+            return false;
+        }
+
+        final LayoutConfig other = (LayoutConfig) o;
+        return (mWidth == other.mWidth &&
+                Float.compare(mFontScale, other.mFontScale) == 0 &&
+                mDensityDpi == other.mDensityDpi);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mWidth;
+        result = 31 * result + Float.floatToIntBits(mFontScale);
+        result = 31 * result + mDensityDpi;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LayoutConfig{width=" + mWidth + ", fontScale=" + mFontScale +
+               ", densityDpi=" + mDensityDpi + "}";
+    }
+}
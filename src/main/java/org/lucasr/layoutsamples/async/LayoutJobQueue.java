@@ -0,0 +1,793 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs pre-layout jobs ordered by their distance to the viewport. Items
+ * ahead of the scroll direction are preferred over the ones behind it and
+ * jobs that fall out of the prefetch window are dropped before they start.
+ *
+ * The number of jobs queued or running at once, and the memory their
+ * elements are estimated to take, can be capped. Past those limits,
+ * prefetch jobs take the room of queued speculative and background jobs,
+ * which are dropped, or are deferred until running ones finish. New
+ * speculative and background jobs are dropped. Urgent jobs are always
+ * admitted, but also take the room of queued speculative and background
+ * jobs first so that they exceed the limits as little as possible.
+ *
+ * All elements are laid out through this queue, except for those built
+ * synchronously on the UI thread, so the limits bound the elements under
+ * construction.
+ */
+public class LayoutJobQueue {
+    public interface OnDrainedListener {
+        /**
+         * Called on the worker that finished a job whenever no other job
+         * is left waiting to run.
+         */
+        public void onDrained();
+    }
+
+    // Items behind the viewport are only needed if the user reverses
+    // the scroll direction, so they're pushed further down the queue.
+    private static final int BEHIND_PENALTY = 2;
+
+    // Urgent jobs are for items that are already bound on screen. They
+    // run ahead of everything else and are never dropped.
+    private static final int URGENT_PRIORITY = -1;
+    private static final int NO_POSITION = -1;
+
+    // Background jobs lay out other variants of items in the window and
+    // run once all prefetch jobs are done.
+    private static final int BACKGROUND_PRIORITY = 50000;
+
+    // Speculative jobs only run once there's nothing else left to do.
+    private static final int SPECULATIVE_PRIORITY = 100000;
+
+    private static final int KIND_PREFETCH = 0;
+    private static final int KIND_URGENT = 1;
+    private static final int KIND_SPECULATIVE = 2;
+    private static final int KIND_BACKGROUND = 3;
+
+    // Rough footprint of an element under construction, used until a
+    // better estimate is set.
+    public static final long DEFAULT_ESTIMATED_JOB_BYTES = 16 * 1024;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final PriorityBlockingQueue<Runnable> mQueue;
+    private final ConcurrentHashMap<Long, LayoutJob> mPendingJobs;
+
+    // Background jobs lay out another variant of items that usually have
+    // a foreground job pending at the same time, so they're kept apart.
+    private final ConcurrentHashMap<Long, LayoutJob> mPendingBackgroundJobs;
+    private final List<Runnable> mDrainedJobs;
+    private final LayoutMetrics mMetrics;
+
+    // Guards the in-flight accounting and the deferred jobs.
+    private final Object mAdmissionLock = new Object();
+    private final PriorityQueue<LayoutJob> mDeferredJobs;
+    private int mInFlightCount;
+    private long mInFlightBytes;
+    private int mMaxInFlightJobs = Integer.MAX_VALUE;
+    private long mMaxInFlightBytes = Long.MAX_VALUE;
+    private volatile long mEstimatedJobBytes = DEFAULT_ESTIMATED_JOB_BYTES;
+
+    private final AtomicLong mSequence = new AtomicLong();
+    private final AtomicInteger mCompletedCount = new AtomicInteger();
+    private final AtomicInteger mCancelledCount = new AtomicInteger();
+    private final AtomicInteger mWastedCount = new AtomicInteger();
+    private final AtomicInteger mDeferredCount = new AtomicInteger();
+    private final AtomicInteger mShedCount = new AtomicInteger();
+
+    private final CopyOnWriteArrayList<OnDrainedListener> mDrainedListeners =
+            new CopyOnWriteArrayList<OnDrainedListener>();
+
+    private volatile Window mWindow = new Window(0, 0, 1, 0, Integer.MAX_VALUE);
+
+    public LayoutJobQueue(int workerCount, ThreadFactory threadFactory, LayoutMetrics metrics) {
+        mMetrics = metrics;
+        mQueue = new PriorityBlockingQueue<Runnable>();
+        mPendingJobs = new ConcurrentHashMap<Long, LayoutJob>();
+        mPendingBackgroundJobs = new ConcurrentHashMap<Long, LayoutJob>();
+        mDrainedJobs = new ArrayList<Runnable>();
+        mDeferredJobs = new PriorityQueue<LayoutJob>();
+
+        mExecutor = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                                           mQueue, threadFactory);
+
+        // Jobs are re-inserted straight into the work queue when they're
+        // re-prioritized, so all workers must be up from the start.
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Queues a pre-layout job for the item with the given id at the given
+     * adapter position. Returns false if the position is outside the
+     * current window or if there's a job pending for the same item.
+     */
+    public boolean submit(long id, int position, Runnable task) {
+        final Window window = mWindow;
+        if (!window.contains(position)) {
+            return false;
+        }
+
+        final LayoutJob job = new LayoutJob(KIND_PREFETCH, id, position, task);
+        if (mPendingJobs.putIfAbsent(id, job) != null) {
+            return false;
+        }
+
+        job.mPriority = window.getPriority(position);
+        execute(job);
+
+        return true;
+    }
+
+    /**
+     * Queues a low priority job for an item outside the prefetch window.
+     * Speculative jobs only run when no other job is queued and are all
+     * dropped by {@link #cancelSpeculative()}.
+     */
+    public boolean submitSpeculative(long id, int position, Runnable task) {
+        final LayoutJob job = new LayoutJob(KIND_SPECULATIVE, id, position, task);
+        if (mPendingJobs.putIfAbsent(id, job) != null) {
+            return false;
+        }
+
+        job.mPriority = SPECULATIVE_PRIORITY + mWindow.getDistance(position);
+        if (!execute(job)) {
+            mPendingJobs.remove(id, job);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Queues a job for an item that is already on screen, ahead of all
+     * prefetch jobs. Urgent jobs are never cancelled. If a job is already
+     * pending for the same item, it's made urgent instead and the given
+     * task runs right after it, so the item is only laid out once.
+     */
+    public void submitUrgent(long id, Runnable task) {
+        final LayoutJob job = new LayoutJob(KIND_URGENT, id, NO_POSITION, task);
+        job.mPriority = URGENT_PRIORITY;
+
+        while (true) {
+            final LayoutJob pendingJob = mPendingJobs.putIfAbsent(id, job);
+            if (pendingJob == null) {
+                execute(job);
+                return;
+            }
+
+            if (pendingJob.addFollowUp(task)) {
+                promote(pendingJob);
+                return;
+            }
+
+            // The pending job finished meanwhile and is no longer in the
+            // pending jobs, try again.
+        }
+    }
+
+    /**
+     * Moves a queued or deferred job to the front of the queue. Jobs that
+     * are already running are left alone.
+     */
+    private void promote(LayoutJob job) {
+        List<LayoutJob> shedJobs = null;
+
+        synchronized (mAdmissionLock) {
+            if (job.mKind == KIND_URGENT) {
+                return;
+            }
+
+            if (mDeferredJobs.remove(job)) {
+                job.mKind = KIND_URGENT;
+                job.mPriority = URGENT_PRIORITY;
+                shedJobs = shedLowPriorityJobs();
+                acquire(job);
+            } else if (mQueue.remove(job)) {
+                job.mKind = KIND_URGENT;
+                job.mPriority = URGENT_PRIORITY;
+                mQueue.add(job);
+                return;
+            } else {
+                return;
+            }
+        }
+
+        dropAll(shedJobs);
+
+        mMetrics.recordQueueDepth(mQueue.size());
+        mExecutor.execute(job);
+    }
+
+    /**
+     * Queues a low priority job for the item with the given id at the
+     * given adapter position, that runs after all prefetch jobs but ahead
+     * of speculative ones. Like prefetch jobs, background jobs are dropped
+     * once their position leaves the window. Returns false if the position
+     * is outside the window, if there's a background job pending for the
+     * same item or if the queue is at capacity.
+     */
+    public boolean submitBackground(long id, int position, Runnable task) {
+        if (!mWindow.contains(position)) {
+            return false;
+        }
+
+        final LayoutJob job = new LayoutJob(KIND_BACKGROUND, id, position, task);
+        if (mPendingBackgroundJobs.putIfAbsent(id, job) != null) {
+            return false;
+        }
+
+        job.mPriority = BACKGROUND_PRIORITY;
+        if (!execute(job)) {
+            mPendingBackgroundJobs.remove(id, job);
+            return false;
+        }
+
+        return true;
+    }
+
+    public void addOnDrainedListener(OnDrainedListener listener) {
+        mDrainedListeners.addIfAbsent(listener);
+    }
+
+    public void removeOnDrainedListener(OnDrainedListener listener) {
+        mDrainedListeners.remove(listener);
+    }
+
+    private void notifyIfDrained() {
+        if (mDrainedListeners.isEmpty() || getQueuedCount() > 0) {
+            return;
+        }
+
+        for (OnDrainedListener listener : mDrainedListeners) {
+            listener.onDrained();
+        }
+    }
+
+    private ConcurrentHashMap<Long, LayoutJob> getPendingJobs(LayoutJob job) {
+        return (job.mKind == KIND_BACKGROUND ? mPendingBackgroundJobs : mPendingJobs);
+    }
+
+    /**
+     * Caps the number of jobs queued or running at once.
+     */
+    public void setMaxInFlightJobs(int maxJobs) {
+        synchronized (mAdmissionLock) {
+            mMaxInFlightJobs = Math.max(1, maxJobs);
+        }
+    }
+
+    /**
+     * Caps the estimated memory taken by the elements of the jobs that
+     * are queued or running at once.
+     */
+    public void setMaxInFlightBytes(long maxBytes) {
+        synchronized (mAdmissionLock) {
+            mMaxInFlightBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Sets the estimated memory taken by the element of a single job.
+     * Only affects jobs admitted from now on.
+     */
+    public void setEstimatedJobBytes(long bytes) {
+        mEstimatedJobBytes = Math.max(0, bytes);
+    }
+
+    // Must be called with the admission lock held.
+    private boolean hasCapacity() {
+        return (mInFlightCount < mMaxInFlightJobs &&
+                mInFlightBytes + mEstimatedJobBytes <= mMaxInFlightBytes);
+    }
+
+    // Must be called with the admission lock held.
+    private void acquire(LayoutJob job) {
+        job.mAdmitted = true;
+        job.mEstimatedBytes = mEstimatedJobBytes;
+
+        mInFlightCount++;
+        mInFlightBytes += job.mEstimatedBytes;
+    }
+
+    /**
+     * Hands the job to the workers if there's room for it. Otherwise
+     * prefetch jobs are deferred and other non-urgent jobs are dropped,
+     * in which case false is returned.
+     */
+    private boolean execute(LayoutJob job) {
+        List<LayoutJob> shedJobs = null;
+
+        synchronized (mAdmissionLock) {
+            if ((job.mKind == KIND_PREFETCH || job.mKind == KIND_URGENT) && !hasCapacity()) {
+                shedJobs = shedLowPriorityJobs();
+            }
+
+            if (job.mKind != KIND_URGENT && !hasCapacity()) {
+                if (job.mKind == KIND_PREFETCH) {
+                    mDeferredJobs.add(job);
+                    mDeferredCount.incrementAndGet();
+                } else {
+                    mShedCount.incrementAndGet();
+                }
+            } else {
+                acquire(job);
+            }
+        }
+
+        dropAll(shedJobs);
+
+        if (!job.mAdmitted) {
+            return (job.mKind == KIND_PREFETCH);
+        }
+
+        mMetrics.recordQueueDepth(mQueue.size());
+        mExecutor.execute(job);
+
+        return true;
+    }
+
+    /**
+     * Takes queued speculative and background jobs out of the work queue,
+     * the least important first, until there's room for another job or
+     * none is left. Their room is given back right away but they still
+     * have to be dropped, outside the lock, with {@link #drop(LayoutJob)}.
+     * Must be called with the admission lock held.
+     */
+    private List<LayoutJob> shedLowPriorityJobs() {
+        List<LayoutJob> shedJobs = null;
+
+        while (!hasCapacity()) {
+            LayoutJob victim = null;
+            for (Runnable runnable : mQueue) {
+                final LayoutJob queuedJob = (LayoutJob) runnable;
+                if (queuedJob.mKind != KIND_SPECULATIVE && queuedJob.mKind != KIND_BACKGROUND) {
+                    continue;
+                }
+
+                if (victim == null || queuedJob.compareTo(victim) > 0) {
+                    victim = queuedJob;
+                }
+            }
+
+            if (victim == null) {
+                break;
+            }
+
+            // A worker might have taken the job meanwhile.
+            if (!mQueue.remove(victim)) {
+                continue;
+            }
+
+            victim.mAdmitted = false;
+            mInFlightCount--;
+            mInFlightBytes -= victim.mEstimatedBytes;
+
+            if (shedJobs == null) {
+                shedJobs = new ArrayList<LayoutJob>();
+            }
+            shedJobs.add(victim);
+        }
+
+        return shedJobs;
+    }
+
+    private void dropAll(List<LayoutJob> jobs) {
+        if (jobs != null) {
+            for (LayoutJob job : jobs) {
+                drop(job);
+            }
+        }
+    }
+
+    private void drop(LayoutJob job) {
+        getPendingJobs(job).remove(job.mId, job);
+        mShedCount.incrementAndGet();
+
+        // Urgent tasks that were waiting on the job still have to run.
+        final List<Runnable> followUps = job.finish();
+        if (followUps != null) {
+            for (Runnable followUp : followUps) {
+                submitUrgent(job.mId, followUp);
+            }
+        }
+    }
+
+    /**
+     * Gives back the room taken by an admitted job and admits as many
+     * deferred jobs as now fit, dropping those outside the window.
+     */
+    private void release(LayoutJob job) {
+        List<LayoutJob> admittedJobs = null;
+
+        synchronized (mAdmissionLock) {
+            mInFlightCount--;
+            mInFlightBytes -= job.mEstimatedBytes;
+
+            final Window window = mWindow;
+            while (!mDeferredJobs.isEmpty() && hasCapacity()) {
+                final LayoutJob deferredJob = mDeferredJobs.poll();
+                if (!window.contains(deferredJob.mPosition)) {
+                    cancel(deferredJob);
+                    continue;
+                }
+
+                acquire(deferredJob);
+
+                if (admittedJobs == null) {
+                    admittedJobs = new ArrayList<LayoutJob>();
+                }
+                admittedJobs.add(deferredJob);
+            }
+        }
+
+        if (admittedJobs != null) {
+            for (LayoutJob admittedJob : admittedJobs) {
+                mMetrics.recordQueueDepth(mQueue.size());
+                mExecutor.execute(admittedJob);
+            }
+        }
+    }
+
+    /**
+     * Moves the window to the given viewport, drops all queued jobs that
+     * are no longer inside it and re-orders the remaining ones.
+     * Must be called from the UI thread.
+     */
+    public void updateWindow(int firstVisible, int visibleCount, int direction,
+                             int start, int end) {
+        final Window window = new Window(firstVisible, visibleCount, direction, start, end);
+        if (window.equals(mWindow)) {
+            return;
+        }
+
+        mWindow = window;
+
+        mQueue.drainTo(mDrainedJobs);
+
+        final int count = mDrainedJobs.size();
+        for (int i = 0; i < count; i++) {
+            final LayoutJob job = (LayoutJob) mDrainedJobs.get(i);
+
+            if (job.mKind == KIND_BACKGROUND && !window.contains(job.mPosition)) {
+                cancel(job);
+            } else if (job.mKind != KIND_PREFETCH) {
+                mQueue.add(job);
+            } else if (window.contains(job.mPosition)) {
+                job.mPriority = window.getPriority(job.mPosition);
+                mQueue.add(job);
+            } else {
+                cancel(job);
+            }
+        }
+
+        mDrainedJobs.clear();
+
+        synchronized (mAdmissionLock) {
+            mDrainedJobs.addAll(mDeferredJobs);
+            mDeferredJobs.clear();
+
+            for (int i = 0; i < mDrainedJobs.size(); i++) {
+                final LayoutJob job = (LayoutJob) mDrainedJobs.get(i);
+
+                if (window.contains(job.mPosition)) {
+                    job.mPriority = window.getPriority(job.mPosition);
+                    mDeferredJobs.add(job);
+                } else {
+                    cancel(job);
+                }
+            }
+        }
+
+        mDrainedJobs.clear();
+    }
+
+    /**
+     * Drops all queued speculative jobs.
+     */
+    public void cancelSpeculative() {
+        mQueue.drainTo(mDrainedJobs);
+
+        final int count = mDrainedJobs.size();
+        for (int i = 0; i < count; i++) {
+            final LayoutJob job = (LayoutJob) mDrainedJobs.get(i);
+
+            if (job.mKind == KIND_SPECULATIVE) {
+                cancel(job);
+            } else {
+                mQueue.add(job);
+            }
+        }
+
+        mDrainedJobs.clear();
+    }
+
+    private void cancel(LayoutJob job) {
+        getPendingJobs(job).remove(job.mId, job);
+        mCancelledCount.incrementAndGet();
+
+        if (job.mAdmitted) {
+            release(job);
+        }
+
+        // Urgent tasks that were waiting on the job still have to run.
+        final List<Runnable> followUps = job.finish();
+        if (followUps != null) {
+            for (Runnable followUp : followUps) {
+                submitUrgent(job.mId, followUp);
+            }
+        }
+    }
+
+    /**
+     * Number of jobs waiting to run, including deferred ones.
+     */
+    public int getQueuedCount() {
+        synchronized (mAdmissionLock) {
+            return mQueue.size() + mDeferredJobs.size();
+        }
+    }
+
+    /**
+     * Number of jobs queued or running.
+     */
+    public int getInFlightCount() {
+        synchronized (mAdmissionLock) {
+            return mInFlightCount;
+        }
+    }
+
+    /**
+     * Estimated memory taken by the elements of the jobs queued or
+     * running.
+     */
+    public long getInFlightBytes() {
+        synchronized (mAdmissionLock) {
+            return mInFlightBytes;
+        }
+    }
+
+    /**
+     * Number of times a prefetch job had to wait for room in the queue.
+     */
+    public int getDeferredCount() {
+        return mDeferredCount.get();
+    }
+
+    /**
+     * Number of speculative and background jobs dropped because the
+     * queue was at capacity, either when submitted or to make room for
+     * prefetch jobs.
+     */
+    public int getShedCount() {
+        return mShedCount.get();
+    }
+
+    /**
+     * Number of jobs that ran to completion.
+     */
+    public int getCompletedCount() {
+        return mCompletedCount.get();
+    }
+
+    /**
+     * Number of jobs dropped before they started because their item
+     * fell out of the prefetch window.
+     */
+    public int getCancelledCount() {
+        return mCancelledCount.get();
+    }
+
+    /**
+     * Number of jobs that ran to completion but whose item had already
+     * fallen out of the prefetch window by the time they finished.
+     */
+    public int getWastedCount() {
+        return mWastedCount.get();
+    }
+
+    private static final class Window {
+        final int firstVisible;
+        final int visibleCount;
+        final int direction;
+        final int start;
+        final int end;
+
+        Window(int firstVisible, int visibleCount, int direction, int start, int end) {
+            this.firstVisible = firstVisible;
+            this.visibleCount = visibleCount;
+            this.direction = direction;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean contains(int position) {
+            return (position >= start && position < end);
+        }
+
+        int getDistance(int position) {
+            final int lastVisible = firstVisible + visibleCount - 1;
+
+            if (position > lastVisible) {
+                return position - lastVisible;
+            } else if (position < firstVisible) {
+                return firstVisible - position;
+            }
+
+            return 0;
+        }
+
+        int getPriority(int position) {
+            final int distance = getDistance(position);
+            if (distance == 0) {
+                return 0;
+            }
+
+            final boolean ahead = (position > firstVisible) == (direction > 0);
+            return (ahead ? distance : distance * BEHIND_PENALTY);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Window)) {
+                return false;
+            }
+
+            final Window other = (Window) o;
+            return (firstVisible == other.firstVisible &&
+                    visibleCount == other.visibleCount &&
+                    direction == other.direction &&
+                    start == other.start &&
+                    end == other.end);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = firstVisible;
+            result = 31 * result + visibleCount;
+            result = 31 * result + direction;
+            result = 31 * result + start;
+            result = 31 * result + end;
+            return result;
+        }
+    }
+
+    private final class LayoutJob implements Runnable, Comparable<LayoutJob> {
+        final long mId;
+        final int mPosition;
+        final long mSequence;
+        final long mSubmitTime;
+        final Runnable mTask;
+
+        // Only changed while the job is out of the work queue.
+        int mKind;
+        int mPriority;
+
+        // Urgent tasks for the same item, run right after this job's own
+        // task. Guarded by the job itself.
+        private List<Runnable> mFollowUps;
+        private boolean mFinished;
+
+        // Set once the job is handed to the workers, under the admission
+        // lock.
+        boolean mAdmitted;
+        long mEstimatedBytes;
+
+        LayoutJob(int kind, long id, int position, Runnable task) {
+            mKind = kind;
+            mId = id;
+            mPosition = position;
+            mSequence = LayoutJobQueue.this.mSequence.getAndIncrement();
+            mSubmitTime = System.nanoTime();
+            mTask = task;
+        }
+
+        /**
+         * Queues an urgent task to run after this job. Returns false if
+         * the job is already finished.
+         */
+        synchronized boolean addFollowUp(Runnable task) {
+            if (mFinished) {
+                return false;
+            }
+
+            if (mFollowUps == null) {
+                mFollowUps = new ArrayList<Runnable>();
+            }
+            mFollowUps.add(task);
+
+            return true;
+        }
+
+        /**
+         * Marks the job as finished and returns the follow-up tasks that
+         * were queued on it, if any.
+         */
+        synchronized List<Runnable> finish() {
+            mFinished = true;
+
+            final List<Runnable> followUps = mFollowUps;
+            mFollowUps = null;
+
+            return followUps;
+        }
+
+        @Override
+        public void run() {
+            mMetrics.record(LayoutMetrics.Stage.WAIT, System.nanoTime() - mSubmitTime);
+
+            final boolean prefetch = (mKind == KIND_PREFETCH);
+            final boolean windowed = (prefetch || mKind == KIND_BACKGROUND);
+
+            if (windowed && !mWindow.contains(mPosition)) {
+                cancel(this);
+                notifyIfDrained();
+                return;
+            }
+
+            try {
+                mTask.run();
+            } finally {
+                getPendingJobs(this).remove(mId, this);
+                release(this);
+
+                final List<Runnable> followUps = finish();
+                if (followUps != null) {
+                    for (Runnable followUp : followUps) {
+                        followUp.run();
+                    }
+                }
+
+                notifyIfDrained();
+            }
+
+            mCompletedCount.incrementAndGet();
+            if (prefetch && !mWindow.contains(mPosition)) {
+                mWastedCount.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(LayoutJob other) {
+            if (mPriority != other.mPriority) {
+                return (mPriority < other.mPriority ? -1 : 1);
+            }
+
+            if (mSequence != other.mSequence) {
+                return (mSequence < other.mSequence ? -1 : 1);
+            }
+
+            return 0;
+        }
+    }
+}
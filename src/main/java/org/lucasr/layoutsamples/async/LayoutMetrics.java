@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import android.util.Log;
+
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for each stage of the async layout
+ * pipeline. All methods can be called from any thread.
+ */
+public class LayoutMetrics {
+    public enum Stage {
+        // Time a layout job spent queued before a worker picked it up.
+        WAIT,
+
+        // Creating the element tree for an item.
+        INFLATE,
+
+        MEASURE,
+        LAYOUT,
+
+        // Storing a finished element in the element cache.
+        CACHE_PUT,
+
+        // Binding an item to a row on the UI thread.
+        BIND
+    }
+
+    private final EnumMap<Stage, Histogram> mLatencies;
+    private final Histogram mQueueDepth = new Histogram();
+
+    private final AtomicLong mCacheHitCount = new AtomicLong();
+    private final AtomicLong mCacheMissCount = new AtomicLong();
+    private final AtomicLong mStaleCount = new AtomicLong();
+    private final AtomicLong mGeometryHitCount = new AtomicLong();
+
+    public LayoutMetrics() {
+        mLatencies = new EnumMap<Stage, Histogram>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            mLatencies.put(stage, new Histogram());
+        }
+    }
+
+    /**
+     * Records how long the given stage took, in nanoseconds.
+     */
+    public void record(Stage stage, long durationNs) {
+        mLatencies.get(stage).record(durationNs);
+    }
+
+    /**
+     * Records the number of jobs already queued when a new one is
+     * submitted.
+     */
+    public void recordQueueDepth(int depth) {
+        mQueueDepth.record(depth);
+    }
+
+    void onCacheHit() {
+        mCacheHitCount.incrementAndGet();
+    }
+
+    void onCacheMiss(boolean stale) {
+        mCacheMissCount.incrementAndGet();
+        if (stale) {
+            mStaleCount.incrementAndGet();
+        }
+    }
+
+    void onGeometryHit() {
+        mGeometryHitCount.incrementAndGet();
+    }
+
+    /**
+     * Latencies of the given stage, in nanoseconds.
+     */
+    public Histogram getLatencies(Stage stage) {
+        return mLatencies.get(stage);
+    }
+
+    public Histogram getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public long getCacheHitCount() {
+        return mCacheHitCount.get();
+    }
+
+    /**
+     * Number of lookups that found no usable element, including the
+     * ones that found an element built from an outdated item.
+     */
+    public long getCacheMissCount() {
+        return mCacheMissCount.get();
+    }
+
+    public long getStaleCount() {
+        return mStaleCount.get();
+    }
+
+    /**
+     * Number of misses that were rebuilt from the geometry left behind
+     * by an evicted element, or by a previous run, without measuring.
+     */
+    public long getGeometryHitCount() {
+        return mGeometryHitCount.get();
+    }
+
+    public void reset() {
+        for (Histogram histogram : mLatencies.values()) {
+            histogram.reset();
+        }
+
+        mQueueDepth.reset();
+        mCacheHitCount.set(0);
+        mCacheMissCount.set(0);
+        mStaleCount.set(0);
+        mGeometryHitCount.set(0);
+    }
+
+    private static long toMicros(long ns) {
+        return TimeUnit.NANOSECONDS.toMicros(ns);
+    }
+
+    /**
+     * Logs a summary of all stages, with latencies in microseconds.
+     */
+    public void log(String tag) {
+        for (Stage stage : Stage.values()) {
+            final Histogram histogram = mLatencies.get(stage);
+            Log.i(tag, stage + ": count=" + histogram.getCount() +
+                    " mean=" + toMicros(histogram.getMean()) +
+                    " p50=" + toMicros(histogram.getPercentile(50)) +
+                    " p90=" + toMicros(histogram.getPercentile(90)) +
+                    " p99=" + toMicros(histogram.getPercentile(99)) +
+                    " max=" + toMicros(histogram.getMax()));
+        }
+
+        Log.i(tag, "QUEUE_DEPTH: mean=" + mQueueDepth.getMean() +
+                " p90=" + mQueueDepth.getPercentile(90) +
+                " max=" + mQueueDepth.getMax());
+
+        Log.i(tag, "CACHE: hits=" + mCacheHitCount.get() +
+                " misses=" + mCacheMissCount.get() +
+                " stale=" + mStaleCount.get() +
+                " geometry=" + mGeometryHitCount.get());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import org.lucasr.layoutsamples.async.AsyncElementFactory.OnElementCreatedListener;
+import org.lucasr.layoutsamples.canvas.UIElement;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands finished elements over to the UI thread in batches, at most once
+ * per frame. Each batch is bounded by a time budget and whatever doesn't
+ * fit in it is carried over to the next frame.
+ */
+public class LayoutResultPublisher {
+    private static final long FRAME_BUDGET_NANOS = 4000000;
+
+    // Used to approximate frame boundaries before Choreographer existed.
+    private static final long FALLBACK_FRAME_DELAY_MS = 16;
+
+    private final Handler mMainHandler;
+    private final ConcurrentLinkedQueue<Result<?, ?>> mResults;
+    private final AtomicBoolean mScheduled;
+
+    private final Runnable mScheduleRunnable;
+    private final Runnable mPublishRunnable;
+    private FrameCallback mFrameCallback;
+
+    public LayoutResultPublisher() {
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mResults = new ConcurrentLinkedQueue<Result<?, ?>>();
+        mScheduled = new AtomicBoolean();
+
+        mScheduleRunnable = new Runnable() {
+            @Override
+            public void run() {
+                scheduleFrame();
+            }
+        };
+
+        mPublishRunnable = new Runnable() {
+            @Override
+            public void run() {
+                publishPending();
+            }
+        };
+    }
+
+    /**
+     * Queues a finished element to be delivered to the given listener on
+     * the UI thread. Can be called from any thread.
+     */
+    public <T, E extends UIElement> void publish(T item, AsyncElement<T, E> element,
+                                                 OnElementCreatedListener<T, E> listener) {
+        mResults.add(new Result<T, E>(item, element, listener));
+
+        if (mScheduled.compareAndSet(false, true)) {
+            // Choreographer instances are per-thread, schedule from the UI thread.
+            mMainHandler.post(mScheduleRunnable);
+        }
+    }
+
+    private void scheduleFrame() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mFrameCallback == null) {
+                mFrameCallback = new FrameCallback();
+            }
+
+            mFrameCallback.post();
+        } else {
+            mMainHandler.postDelayed(mPublishRunnable, FALLBACK_FRAME_DELAY_MS);
+        }
+    }
+
+    private void publishPending() {
+        final long deadline = System.nanoTime() + FRAME_BUDGET_NANOS;
+
+        Result<?, ?> result;
+        while ((result = mResults.poll()) != null) {
+            result.deliver();
+
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+        }
+
+        // Clear the flag before re-checking the queue so that results
+        // added concurrently either see it cleared or get picked up here.
+        mScheduled.set(false);
+
+        if (!mResults.isEmpty() && mScheduled.compareAndSet(false, true)) {
+            scheduleFrame();
+        }
+    }
+
+    private static final class Result<T, E extends UIElement> {
+        final T item;
+        final AsyncElement<T, E> element;
+        final OnElementCreatedListener<T, E> listener;
+
+        Result(T item, AsyncElement<T, E> element, OnElementCreatedListener<T, E> listener) {
+            this.item = item;
+            this.element = element;
+            this.listener = listener;
+        }
+
+        void deliver() {
+            listener.onElementCreated(item, element);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private final class FrameCallback implements Choreographer.FrameCallback {
+        void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            publishPending();
+        }
+    }
+}
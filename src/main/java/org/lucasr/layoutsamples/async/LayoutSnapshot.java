@@ -0,0 +1,576 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.async;
+
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.util.Log;
+
+import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.util.LongLruCache.EntryVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the geometry of laid out elements in a file across process
+ * restarts, so that items laid out in a previous run can be rebuilt
+ * without being measured. The file is memory-mapped and only the entries
+ * that are looked up are read from it. Entries are keyed by item key and
+ * by the width, font scale and density of their {@link LayoutConfig},
+ * as config ids are only unique within a process.
+ *
+ * The file starts with a header holding a magic number, the format
+ * version, the version code and update time of the app that wrote it,
+ * a hash of its locale, a hash of the system build fingerprint, a CRC32
+ * of the rest of the file and the number of configs and entries. Then
+ * come the configs, the entries sorted by key and config, and finally
+ * the packed geometry of all entries. A file that doesn't check out, or
+ * that was written by another build of the app or of the system, or for
+ * another locale, is deleted and everything gets measured again.
+ */
+public class LayoutSnapshot {
+    private static final String LOGTAG = "LayoutSnapshot";
+
+    private static final int MAGIC = 0x4c534e50;
+    private static final int FORMAT_VERSION = 3;
+
+    // Magic, format version, app version code, app update time, locale
+    // hash, system build hash, checksum, config count and entry count.
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 4 + 4 + 8 + 4 + 4;
+
+    // Width, font scale and density.
+    private static final int CONFIG_BYTES = 4 + 4 + 4;
+
+    // Item key, config index, item version, and offset and length of the
+    // geometry in ints.
+    private static final int ENTRY_BYTES = 8 + 4 + 8 + 4 + 4;
+
+    // Upper bound on the entries written, most recently used ones first.
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final int CHECKSUM_CHUNK_BYTES = 8 * 1024;
+
+    private final File mFile;
+    private final int mAppVersion;
+    private final long mAppUpdateTime;
+    private final int mLocaleHash;
+    private final int mSystemBuildHash;
+    private final Executor mExecutor;
+
+    private final Object mLock = new Object();
+    private volatile boolean mLoaded;
+    private volatile MappedSnapshot mMapped;
+
+    /**
+     * Creates a snapshot kept in the given file. Resources and text
+     * measurement may change with the app's build, the locale and the
+     * system's fonts, so snapshots written by another build of the app
+     * or of the system, or for another locale, are discarded.
+     */
+    public LayoutSnapshot(File file, PackageInfo packageInfo, Locale locale,
+                          Executor executor) {
+        mFile = file;
+        mAppVersion = packageInfo.versionCode;
+        mAppUpdateTime = packageInfo.lastUpdateTime;
+        mLocaleHash = locale.toString().hashCode();
+        mSystemBuildHash = Build.FINGERPRINT.hashCode();
+        mExecutor = executor;
+    }
+
+    /**
+     * Maps the file on the snapshot's executor, ahead of the first lookup.
+     */
+    public void preload() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getMapped();
+            }
+        });
+    }
+
+    /**
+     * Returns the geometry written for the given item key and config by
+     * a previous save, or null if there's none. Maps the file if that's
+     * not done yet, see {@link #preload()}.
+     */
+    public ElementGeometry get(long id, LayoutConfig config) {
+        final MappedSnapshot mapped = getMapped();
+        return (mapped != null ? mapped.get(id, config) : null);
+    }
+
+    private MappedSnapshot getMapped() {
+        if (mLoaded) {
+            return mMapped;
+        }
+
+        synchronized (mLock) {
+            if (!mLoaded) {
+                mMapped = load();
+                mLoaded = true;
+            }
+
+            return mMapped;
+        }
+    }
+
+    private MappedSnapshot load() {
+        if (!mFile.exists()) {
+            return null;
+        }
+
+        try {
+            return MappedSnapshot.map(mFile, mAppVersion, mAppUpdateTime, mLocaleHash,
+                                      mSystemBuildHash);
+        } catch (IOException e) {
+            Log.w(LOGTAG, "Discarding layout snapshot", e);
+            if (!mFile.delete()) {
+                Log.w(LOGTAG, "Could not delete " + mFile);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Writes the geometry of the elements in the given caches, along with
+     * the entries of the previous snapshot that weren't laid out again,
+     * on the snapshot's executor. Must be called from the UI thread.
+     */
+    public void save(UIElementCache elementCache, ElementGeometryCache geometryCache) {
+        // Only references are collected here, geometry is captured and
+        // written in the background.
+        final List<Entry> entries = new ArrayList<Entry>();
+
+        elementCache.visitEntries(new EntryVisitor<UIElement>() {
+            @Override
+            public void visitEntry(long id, int configId, UIElement element) {
+                final LayoutConfig config = LayoutConfig.fromId(configId);
+                if (config != null && element instanceof AsyncElement &&
+                        entries.size() < MAX_ENTRIES) {
+                    entries.add(new Entry(id, config, (AsyncElement<?, ?>) element, null));
+                }
+            }
+        });
+
+        geometryCache.visitEntries(new EntryVisitor<ElementGeometry>() {
+            @Override
+            public void visitEntry(long id, int configId, ElementGeometry geometry) {
+                final LayoutConfig config = LayoutConfig.fromId(configId);
+                if (config != null && entries.size() < MAX_ENTRIES) {
+                    entries.add(new Entry(id, config, null, geometry));
+                }
+            }
+        });
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(entries);
+                } catch (IOException e) {
+                    Log.w(LOGTAG, "Could not write layout snapshot", e);
+                }
+            }
+        });
+    }
+
+    private void write(List<Entry> entries) throws IOException {
+        final HashSet<Entry> written = new HashSet<Entry>();
+        final List<Entry> toWrite = new ArrayList<Entry>();
+
+        for (Entry entry : entries) {
+            if (entry.getGeometry() != null && written.add(entry)) {
+                toWrite.add(entry);
+            }
+        }
+
+        final MappedSnapshot mapped = getMapped();
+        if (mapped != null) {
+            mapped.addEntries(toWrite, written, MAX_ENTRIES);
+        }
+
+        final List<LayoutConfig> configs = new ArrayList<LayoutConfig>();
+        for (Entry entry : toWrite) {
+            if (!configs.contains(entry.mConfig)) {
+                configs.add(entry.mConfig);
+            }
+        }
+
+        Collections.sort(toWrite, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                if (lhs.mId != rhs.mId) {
+                    return (lhs.mId < rhs.mId ? -1 : 1);
+                }
+
+                return configs.indexOf(lhs.mConfig) - configs.indexOf(rhs.mConfig);
+            }
+        });
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        for (LayoutConfig config : configs) {
+            out.writeInt(config.getWidth());
+            out.writeFloat(config.getFontScale());
+            out.writeInt(config.getDensityDpi());
+        }
+
+        int offset = 0;
+        for (Entry entry : toWrite) {
+            final int length = entry.getGeometry().getData().length;
+
+            out.writeLong(entry.mId);
+            out.writeInt(configs.indexOf(entry.mConfig));
+            out.writeLong(entry.getGeometry().getVersion());
+            out.writeInt(offset);
+            out.writeInt(length);
+
+            offset += length;
+        }
+
+        for (Entry entry : toWrite) {
+            for (int value : entry.getGeometry().getData()) {
+                out.writeInt(value);
+            }
+        }
+
+        out.flush();
+        final byte[] body = bytes.toByteArray();
+
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+
+        // Written next to the snapshot and renamed over it, so a crash
+        // never leaves a partial file behind. The previous file stays
+        // mapped until the process exits.
+        final File tempFile = new File(mFile.getPath() + ".tmp");
+        final FileOutputStream fileOut = new FileOutputStream(tempFile);
+        try {
+            final DataOutputStream header = new DataOutputStream(fileOut);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeInt(mAppVersion);
+            header.writeLong(mAppUpdateTime);
+            header.writeInt(mLocaleHash);
+            header.writeInt(mSystemBuildHash);
+            header.writeLong(crc.getValue());
+            header.writeInt(configs.size());
+            header.writeInt(toWrite.size());
+            header.write(body);
+            header.flush();
+
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+
+        if (!tempFile.renameTo(mFile)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile);
+        }
+    }
+
+    private static class Entry {
+        final long mId;
+        final LayoutConfig mConfig;
+        private final AsyncElement<?, ?> mElement;
+        private ElementGeometry mGeometry;
+        private boolean mCaptured;
+
+        Entry(long id, LayoutConfig config, AsyncElement<?, ?> element,
+              ElementGeometry geometry) {
+            mId = id;
+            mConfig = config;
+            mElement = element;
+            mGeometry = geometry;
+        }
+
+        /**
+         * Geometry of the entry, captured from its element the first time
+         * it's needed. Null if the element can't be captured.
+         */
+        ElementGeometry getGeometry() {
+            if (mElement != null && !mCaptured) {
+                mGeometry = mElement.captureGeometry();
+                mCaptured = true;
+            }
+
+            return mGeometry;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+
+            final Entry other = (Entry) o;
+            return (mId == other.mId && mConfig == other.mConfig);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (mId ^ (mId >>> 32)) + mConfig.hashCode();
+        }
+    }
+
+    /**
+     * Read-only view of a validated snapshot file.
+     */
+    private static class MappedSnapshot {
+        private final ByteBuffer mBuffer;
+        private final LayoutConfig[] mConfigs;
+        private final int mEntryCount;
+        private final int mEntriesStart;
+        private final int mDataStart;
+
+        private MappedSnapshot(ByteBuffer buffer, LayoutConfig[] configs, int entryCount,
+                               int entriesStart, int dataStart) {
+            mBuffer = buffer;
+            mConfigs = configs;
+            mEntryCount = entryCount;
+            mEntriesStart = entriesStart;
+            mDataStart = dataStart;
+        }
+
+        /**
+         * Maps the given file and checks it thoroughly, so that entries
+         * can be read without any further checks. Also checks that it was
+         * written by the given app and system builds and for the given
+         * locale.
+         */
+        static MappedSnapshot map(File file, int appVersion, long appUpdateTime,
+                                  int localeHash, int systemBuildHash) throws IOException {
+            final ByteBuffer buffer;
+
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = raf.getChannel();
+                final long size = channel.size();
+                if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                    throw new IOException("Bad size: " + size);
+                }
+
+                // The mapping outlives the channel.
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } finally {
+                raf.close();
+            }
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Bad magic");
+            }
+
+            final int formatVersion = buffer.getInt(4);
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported version: " + formatVersion);
+            }
+
+            if (buffer.getInt(8) != appVersion || buffer.getLong(12) != appUpdateTime) {
+                throw new IOException("Written by another build of the app");
+            }
+
+            if (buffer.getInt(20) != localeHash) {
+                throw new IOException("Written for another locale");
+            }
+
+            if (buffer.getInt(24) != systemBuildHash) {
+                throw new IOException("Written by another build of the system");
+            }
+
+            final long checksum = buffer.getLong(28);
+            if (checksum != computeChecksum(buffer)) {
+                throw new IOException("Bad checksum");
+            }
+
+            final int configCount = buffer.getInt(36);
+            final int entryCount = buffer.getInt(40);
+            if (configCount < 0 || entryCount < 0) {
+                throw new IOException("Bad counts");
+            }
+
+            final long entriesStart = HEADER_BYTES + (long) configCount * CONFIG_BYTES;
+            final long dataStart = entriesStart + (long) entryCount * ENTRY_BYTES;
+            if (dataStart > buffer.capacity()) {
+                throw new IOException("Truncated");
+            }
+
+            final LayoutConfig[] configs = new LayoutConfig[configCount];
+            for (int i = 0; i < configCount; i++) {
+                final int offset = HEADER_BYTES + i * CONFIG_BYTES;
+                configs[i] = LayoutConfig.obtain(buffer.getInt(offset),
+                                                 buffer.getFloat(offset + 4),
+                                                 buffer.getInt(offset + 8));
+            }
+
+            final MappedSnapshot mapped = new MappedSnapshot(buffer, configs, entryCount,
+                                                             (int) entriesStart,
+                                                             (int) dataStart);
+            mapped.checkEntries();
+
+            return mapped;
+        }
+
+        private static long computeChecksum(ByteBuffer buffer) {
+            final ByteBuffer body = buffer.duplicate();
+            body.position(HEADER_BYTES);
+
+            final CRC32 crc = new CRC32();
+            final byte[] chunk = new byte[CHECKSUM_CHUNK_BYTES];
+            while (body.hasRemaining()) {
+                final int length = Math.min(chunk.length, body.remaining());
+                body.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+
+            return crc.getValue();
+        }
+
+        private void checkEntries() throws IOException {
+            final long dataInts = (mBuffer.capacity() - mDataStart) / 4;
+
+            for (int i = 0; i < mEntryCount; i++) {
+                final int configIndex = getConfigIndex(i);
+                final long offset = getDataOffset(i);
+                final long length = getDataLength(i);
+
+                if (configIndex < 0 || configIndex >= mConfigs.length ||
+                        offset < 0 || length < 0 || offset + length > dataInts) {
+                    throw new IOException("Bad entry: " + i);
+                }
+
+                if (i > 0 && compare(i, getId(i - 1), getConfigIndex(i - 1)) <= 0) {
+                    throw new IOException("Unsorted entry: " + i);
+                }
+            }
+        }
+
+        private int getEntryOffset(int entry) {
+            return mEntriesStart + entry * ENTRY_BYTES;
+        }
+
+        private long getId(int entry) {
+            return mBuffer.getLong(getEntryOffset(entry));
+        }
+
+        private int getConfigIndex(int entry) {
+            return mBuffer.getInt(getEntryOffset(entry) + 8);
+        }
+
+        private long getVersion(int entry) {
+            return mBuffer.getLong(getEntryOffset(entry) + 12);
+        }
+
+        private int getDataOffset(int entry) {
+            return mBuffer.getInt(getEntryOffset(entry) + 20);
+        }
+
+        private int getDataLength(int entry) {
+            return mBuffer.getInt(getEntryOffset(entry) + 24);
+        }
+
+        /**
+         * Compares the key of the given entry with the given one.
+         */
+        private int compare(int entry, long id, int configIndex) {
+            final long entryId = getId(entry);
+            if (entryId != id) {
+                return (entryId < id ? -1 : 1);
+            }
+
+            return getConfigIndex(entry) - configIndex;
+        }
+
+        private int indexOf(LayoutConfig config) {
+            for (int i = 0; i < mConfigs.length; i++) {
+                if (mConfigs[i] == config) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        private ElementGeometry read(int entry) {
+            final int[] data = new int[getDataLength(entry)];
+
+            final int start = mDataStart + 4 * getDataOffset(entry);
+            for (int i = 0; i < data.length; i++) {
+                data[i] = mBuffer.getInt(start + 4 * i);
+            }
+
+            return new ElementGeometry(getVersion(entry), data);
+        }
+
+        ElementGeometry get(long id, LayoutConfig config) {
+            final int configIndex = indexOf(config);
+            if (configIndex < 0) {
+                return null;
+            }
+
+            int low = 0;
+            int high = mEntryCount - 1;
+
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+
+                final int result = compare(mid, id, configIndex);
+                if (result < 0) {
+                    low = mid + 1;
+                } else if (result > 0) {
+                    high = mid - 1;
+                } else {
+                    return read(mid);
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Adds the entries of this snapshot that aren't in the given set
+         * to the given list, until it holds the given number of entries.
+         */
+        void addEntries(List<Entry> entries, HashSet<Entry> added, int maxEntries) {
+            for (int i = 0; i < mEntryCount && entries.size() < maxEntries; i++) {
+                final Entry entry = new Entry(getId(i), mConfigs[getConfigIndex(i)], null,
+                                              null);
+                if (added.add(entry)) {
+                    entry.mGeometry = read(i);
+                    entries.add(entry);
+                }
+            }
+        }
+    }
+}
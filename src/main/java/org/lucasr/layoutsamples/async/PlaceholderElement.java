@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.graphics.Canvas;
+import android.view.View.MeasureSpec;
+
+import org.lucasr.layoutsamples.canvas.AbstractUIElement;
+import org.lucasr.layoutsamples.canvas.UIElementHost;
+
+/**
+ * Empty element with an estimated height, bound in place of a tweet
+ * whose real element is still being laid out in the background.
+ */
+public class PlaceholderElement extends AbstractUIElement {
+    private int mEstimatedHeight;
+
+    public PlaceholderElement(UIElementHost host) {
+        super(host);
+    }
+
+    public void setEstimatedHeight(int height) {
+        if (mEstimatedHeight == height) {
+            return;
+        }
+
+        mEstimatedHeight = height;
+        requestLayout();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Do nothing.
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+
+        int height = mEstimatedHeight;
+        if (MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.EXACTLY) {
+            height = MeasureSpec.getSize(heightMeasureSpec);
+        }
+
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onLayout(int left, int top, int right, int bottom) {
+        // Do nothing.
+    }
+
+    @Override
+    public void drawableStateChanged() {
+        // Do nothing.
+    }
+}
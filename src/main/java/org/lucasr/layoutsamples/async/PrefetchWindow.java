@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.os.SystemClock;
+
+public class PrefetchWindow {
+    // How far ahead of the viewport we look when the list is idle or
+    // scrolling slowly, in milliseconds.
+    private static final long MIN_LOOKAHEAD_MS = 250;
+
+    // Velocity samples older than this are considered stale, meaning the
+    // list has stopped scrolling.
+    private static final long IDLE_TIMEOUT_MS = 150;
+
+    private static final float VELOCITY_SMOOTHING = 0.6f;
+    private static final float COST_SMOOTHING = 0.2f;
+
+    private static final int MAX_ITEMS_AHEAD = 60;
+
+    private final int mWorkerCount;
+
+    private int mFirstVisible = -1;
+    private int mVisibleCount;
+
+    private int mLastPosition = -1;
+    private long mLastPositionTime;
+
+    // Smoothed scroll velocity in items per second, positive when
+    // scrolling towards the end of the list.
+    private float mVelocity;
+    private int mDirection = 1;
+
+    // Smoothed cost of laying out a single item off the main thread.
+    private volatile long mItemCostNanos;
+
+    private int mStart;
+    private int mEnd;
+
+    public PrefetchWindow(int workerCount) {
+        mWorkerCount = Math.max(1, workerCount);
+    }
+
+    public void onScroll(int firstVisible, int visibleCount, int itemCount) {
+        final long now = SystemClock.uptimeMillis();
+
+        if (mLastPosition >= 0 && firstVisible != mLastPosition) {
+            final long elapsed = Math.max(1, now - mLastPositionTime);
+            final float velocity = (firstVisible - mLastPosition) * 1000f / elapsed;
+
+            if (now - mLastPositionTime > IDLE_TIMEOUT_MS) {
+                mVelocity = velocity;
+            } else {
+                mVelocity = VELOCITY_SMOOTHING * velocity +
+                            (1 - VELOCITY_SMOOTHING) * mVelocity;
+            }
+
+            mDirection = (firstVisible > mLastPosition ? 1 : -1);
+        }
+
+        if (firstVisible != mLastPosition) {
+            mLastPosition = firstVisible;
+            mLastPositionTime = now;
+        }
+
+        mFirstVisible = firstVisible;
+        mVisibleCount = visibleCount;
+
+        updateRange(now, itemCount);
+    }
+
+    public void onItemLaidOut(long costNanos) {
+        final long current = mItemCostNanos;
+        if (current == 0) {
+            mItemCostNanos = costNanos;
+        } else {
+            mItemCostNanos = (long) (COST_SMOOTHING * costNanos + (1 - COST_SMOOTHING) * current);
+        }
+    }
+
+    private void updateRange(long now, int itemCount) {
+        final float velocity = getVelocity(now);
+
+        // Time it takes the workers to lay out a screenful of items. Items
+        // that will scroll into view sooner than that must already be
+        // queued, otherwise they'll be measured on the main thread.
+        final long screenCostMs = mItemCostNanos * mVisibleCount / mWorkerCount / 1000000;
+        final long lookaheadMs = Math.max(MIN_LOOKAHEAD_MS, screenCostMs);
+
+        int itemsAhead = (int) Math.ceil(Math.abs(velocity) * lookaheadMs / 1000f);
+        itemsAhead = Math.min(MAX_ITEMS_AHEAD, Math.max(mVisibleCount, itemsAhead));
+
+        // Keep a small margin behind the viewport while idle in case the
+        // user reverses direction, but don't waste work on it mid-fling.
+        final int itemsBehind = (velocity == 0 ? mVisibleCount / 2 : 1);
+
+        final int lastVisible = mFirstVisible + mVisibleCount;
+        if (mDirection > 0) {
+            mStart = mFirstVisible - itemsBehind;
+            mEnd = lastVisible + itemsAhead;
+        } else {
+            mStart = mFirstVisible - itemsAhead;
+            mEnd = lastVisible + itemsBehind;
+        }
+
+        mStart = Math.max(0, mStart);
+        mEnd = Math.min(itemCount, mEnd);
+    }
+
+    private float getVelocity(long now) {
+        if (now - mLastPositionTime > IDLE_TIMEOUT_MS) {
+            return 0;
+        }
+
+        return mVelocity;
+    }
+
+    /**
+     * Current scroll velocity in items per second, 0 if the list has
+     * stopped scrolling.
+     */
+    public float getVelocity() {
+        return getVelocity(SystemClock.uptimeMillis());
+    }
+
+    public int getFirstVisible() {
+        return mFirstVisible;
+    }
+
+    public int getVisibleCount() {
+        return mVisibleCount;
+    }
+
+    public int getDirection() {
+        return mDirection;
+    }
+
+    /**
+     * First position of the prefetch window, inclusive.
+     */
+    public int getStart() {
+        return mStart;
+    }
+
+    /**
+     * Last position of the prefetch window, exclusive.
+     */
+    public int getEnd() {
+        return mEnd;
+    }
+
+    public boolean contains(int position) {
+        return (position >= mStart && position < mEnd);
+    }
+}
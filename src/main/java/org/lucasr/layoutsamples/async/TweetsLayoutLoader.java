@@ -14,44 +14,21 @@
  * limitations under the License.
  */
 
+
 package org.lucasr.layoutsamples.async;
 
 import android.content.Context;
-import android.view.View;
 import android.widget.Adapter;
 
 import org.lucasr.layoutsamples.adapter.Tweet;
-import org.lucasr.layoutsamples.app.App;
-import org.lucasr.layoutsamples.canvas.UIElement;
-import org.lucasr.smoothie.SimpleItemLoader;
-
-public class TweetsLayoutLoader extends SimpleItemLoader<Tweet, UIElement> {
-    private final Context mContext;
-    private final UIElementCache mElementCache;
 
-    public TweetsLayoutLoader(Context context) {
-        mContext = context;
-        mElementCache = App.getInstance(context).getElementCache();
+public class TweetsLayoutLoader extends AsyncElementLoader<Tweet> {
+    public TweetsLayoutLoader(Context context, AsyncElementFactory<Tweet, ?> factory) {
+        super(context, factory);
     }
 
     @Override
     public Tweet getItemParams(Adapter adapter, int position) {
         return (Tweet) adapter.getItem(position);
     }
-
-    @Override
-    public UIElement loadItem(Tweet tweet) {
-        return AsyncTweetElementFactory.create(mContext, tweet);
-    }
-
-    @Override
-    public UIElement loadItemFromMemory(Tweet tweet) {
-        return mElementCache.get(tweet.getId());
-    }
-
-    @Override
-    public void displayItem(View itemView, UIElement result, boolean fromMemory) {
-        // Do nothing as we're only using this loader to pre-measure/layout
-        // TweetElements that are off screen.
-    }
 }
@@ -16,14 +16,58 @@
 
 package org.lucasr.layoutsamples.async;
 
-import android.util.LruCache;
-
 import org.lucasr.layoutsamples.canvas.UIElement;
+import org.lucasr.layoutsamples.util.LongLruCache;
+
+/**
+ * Caches laid out elements up to a budget of their estimated footprint
+ * in bytes, see {@link ElementSizeEstimator}. Elements are keyed by item
+ * and by the {@link LayoutConfig} they were laid out with, so variants of
+ * the same item for different configurations are kept side by side.
+ * Lookups don't allocate. Evicted elements leave their geometry in the
+ * given {@link ElementGeometryCache}.
+ */
+public class UIElementCache extends LongLruCache<UIElement> {
+    private final ElementGeometryCache mGeometryCache;
+
+    public UIElementCache(long maxBytes, ElementGeometryCache geometryCache) {
+        super(maxBytes);
+        mGeometryCache = geometryCache;
+    }
+
+    public UIElement get(long id, LayoutConfig config) {
+        return get(id, config.getId());
+    }
+
+    public UIElement put(long id, LayoutConfig config, UIElement element) {
+        return put(id, config.getId(), element);
+    }
+
+    @Override
+    protected int sizeOf(long id, int configId, UIElement element) {
+        // Async elements are estimated once, when they're created. Sizes
+        // must not change while the element is cached.
+        final long bytes;
+        if (element instanceof AsyncElement) {
+            bytes = ((AsyncElement<?, ?>) element).getEstimatedBytes();
+        } else {
+            bytes = ElementSizeEstimator.estimate(element);
+        }
+
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
 
-public class UIElementCache extends LruCache<Long, UIElement> {
-    private static final int MAX_CACHED_ELEMENTS = 30;
+    @Override
+    protected void entryRemoved(boolean evicted, long id, int configId, UIElement oldValue,
+                                UIElement newValue) {
+        // Replaced elements are outdated, only keep what's evicted.
+        if (!evicted || !(oldValue instanceof AsyncElement)) {
+            return;
+        }
 
-    public UIElementCache() {
-        super(MAX_CACHED_ELEMENTS);
+        final ElementGeometry geometry = ((AsyncElement<?, ?>) oldValue).captureGeometry();
+        if (geometry != null) {
+            mGeometryCache.put(id, configId, geometry);
+        }
     }
 }
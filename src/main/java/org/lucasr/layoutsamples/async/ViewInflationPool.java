@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.async;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.view.InflateException;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inflates views from a layout on a background thread ahead of demand.
+ * Keeps up to a target number of views ready to be taken from the UI
+ * thread and refills itself as they're taken, until the list starts
+ * reusing its recycled views.
+ */
+public class ViewInflationPool {
+    private static final String LOGTAG = "ViewInflationPool";
+    private static final boolean DEBUG = false;
+
+    private final LayoutInflater mInflater;
+    private final int mLayoutId;
+    private final ViewGroup mParent;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Runnable mInflateRunnable;
+
+    private final ConcurrentLinkedQueue<View> mViews;
+    private final AtomicInteger mPendingCount;
+    private volatile int mTargetSize;
+
+    private int mHitCount;
+    private int mMissCount;
+
+    // Set once the list reuses its recycled views, which then cover the
+    // demand for new ones.
+    private boolean mRecycling;
+
+    /**
+     * Views are inflated with layout params generated by the given parent
+     * but are not attached to it.
+     */
+    public ViewInflationPool(Context context, int layoutId, ViewGroup parent) {
+        // LayoutInflater instances serialize all inflations, the pool
+        // gets its own so that it doesn't block the UI thread. Views that
+        // inflate their own children from their constructor get it too,
+        // through the context they're created with.
+        mInflater = new InflaterContext(context).getInflater();
+        mLayoutId = layoutId;
+        mParent = parent;
+
+        mViews = new ConcurrentLinkedQueue<View>();
+        mPendingCount = new AtomicInteger();
+
+        // LayoutInflater caches view constructors in a static map that is
+        // not thread-safe. Inflating the first view here caches all the
+        // constructors the layout needs, so the background inflations only
+        // ever read from it.
+        mViews.add(mInflater.inflate(mLayoutId, mParent, false));
+
+        mThread = new HandlerThread(LOGTAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+
+        mInflateRunnable = new Runnable() {
+            @Override
+            public void run() {
+                inflate();
+            }
+        };
+    }
+
+    private void inflate() {
+        try {
+            mViews.add(mInflater.inflate(mLayoutId, mParent, false));
+        } catch (InflateException e) {
+            // Some views can't be created off the UI thread, fall back
+            // to inflating them synchronously.
+            Log.w(LOGTAG, "Could not inflate layout in the background", e);
+            mTargetSize = 0;
+        } finally {
+            mPendingCount.decrementAndGet();
+        }
+    }
+
+    private void refill() {
+        if (mRecycling) {
+            return;
+        }
+
+        while (mViews.size() + mPendingCount.get() < mTargetSize) {
+            mPendingCount.incrementAndGet();
+            mHandler.post(mInflateRunnable);
+        }
+    }
+
+    /**
+     * Sets how many views the pool keeps ready and starts inflating the
+     * missing ones. Must be called from the UI thread.
+     */
+    public void setTargetSize(int targetSize) {
+        mTargetSize = targetSize;
+        refill();
+    }
+
+    public int getTargetSize() {
+        return mTargetSize;
+    }
+
+    public int getLayoutId() {
+        return mLayoutId;
+    }
+
+    /**
+     * Returns an inflated view if one is ready, null otherwise. Must be
+     * called from the UI thread.
+     */
+    public View take() {
+        final View view = mViews.poll();
+        if (view != null) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+
+        refill();
+        return view;
+    }
+
+    /**
+     * Tells the pool that a recycled view was reused instead of taking a
+     * new one. Once that happens after views were taken, the pool stops
+     * refilling itself. Must be called from the UI thread.
+     */
+    public void onViewReused() {
+        if (mHitCount + mMissCount > 0) {
+            mRecycling = true;
+        }
+    }
+
+    /**
+     * Number of times a view was ready when taken.
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Number of times no view was ready when taken.
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Context whose layout inflater is a clone owned by the pool.
+     */
+    private static class InflaterContext extends ContextWrapper {
+        private final LayoutInflater mInflater;
+
+        InflaterContext(Context base) {
+            super(base);
+            mInflater = LayoutInflater.from(base).cloneInContext(this);
+        }
+
+        LayoutInflater getInflater() {
+            return mInflater;
+        }
+
+        @Override
+        public Object getSystemService(String name) {
+            if (LAYOUT_INFLATER_SERVICE.equals(name)) {
+                return mInflater;
+            }
+
+            return super.getSystemService(name);
+        }
+    }
+
+    /**
+     * Stops the background thread and drops all views that weren't taken.
+     */
+    public void quit() {
+        if (DEBUG) {
+            Log.d(LOGTAG, "Pool for layout " + mLayoutId + " quit with " + mHitCount +
+                    " hits and " + mMissCount + " misses");
+        }
+
+        mTargetSize = 0;
+        mThread.quit();
+        mViews.clear();
+    }
+}
@@ -124,6 +124,15 @@ public abstract class AbstractUIElement implements UIElement {
         mMeasuredHeight = height;
     }
 
+    /**
+     * Sets the measured dimension of an element that was measured with
+     * the same content and constraints before, so that it can be laid
+     * out without being measured.
+     */
+    public void setPrecomputedMeasuredDimension(int width, int height) {
+        setMeasuredDimension(width, height);
+    }
+
     @Override
     public int getMeasuredWidth() {
         return mMeasuredWidth;
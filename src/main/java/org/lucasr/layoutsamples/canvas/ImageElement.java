@@ -405,6 +405,10 @@ public class ImageElement extends AbstractUIElement implements Drawable.Callback
         setDrawableVisible(false);
     }
 
+    public Drawable getDrawable() {
+        return mDrawable;
+    }
+
     public void setImageLevel(int level) {
         mLevel = level;
 
@@ -455,6 +459,10 @@ public class ImageElement extends AbstractUIElement implements Drawable.Callback
         setImageDrawable(new BitmapDrawable(getResources(), bitmap));
     }
 
+    public ScaleType getScaleType() {
+        return mScaleType;
+    }
+
     public void setScaleType(ScaleType scaleType) {
         if (scaleType == null) {
             throw new NullPointerException();
@@ -34,17 +34,25 @@ public class StaticLayoutWithMaxLines {
     private static final String TEXT_DIRS_CLASS = "android.text.TextDirectionHeuristics";
     private static final String TEXT_DIR_FIRSTSTRONG_LTR = "FIRSTSTRONG_LTR";
 
-    private static boolean sInitialized;
+    private static volatile boolean sInitialized;
 
     private static Constructor<StaticLayout> sConstructor;
-    private static Object[] sConstructorArgs;
+    private static int sConstructorArgsCount;
     private static Object sTextDirection;
 
-    public static synchronized void ensureInitialized() {
+    public static void ensureInitialized() {
         if (sInitialized) {
             return;
         }
 
+        synchronized (StaticLayoutWithMaxLines.class) {
+            if (!sInitialized) {
+                initialize();
+            }
+        }
+    }
+
+    private static void initialize() {
         try {
             final Class<?> textDirClass;
             if (Build.VERSION.SDK_INT >= 18) {
@@ -78,7 +86,7 @@ public class StaticLayoutWithMaxLines {
             // Make the StaticLayout constructor with max lines public
             sConstructor = StaticLayout.class.getDeclaredConstructor(signature);
             sConstructor.setAccessible(true);
-            sConstructorArgs = new Object[signature.length];
+            sConstructorArgsCount = signature.length;
         } catch (NoSuchMethodException e) {
             Log.e(LOGTAG, "StaticLayout constructor with max lines not found.", e);
         } catch (ClassNotFoundException e) {
@@ -101,29 +109,33 @@ public class StaticLayoutWithMaxLines {
         return (sConstructor != null);
     }
 
-    public static synchronized StaticLayout create(CharSequence source, int bufstart, int bufend,
-                                                   TextPaint paint, int outerWidth, Alignment align,
-                                                   float spacingMult, float spacingAdd,
-                                                   boolean includePad, TruncateAt ellipsize,
-                                                   int ellipsisWidth, int maxLines) {
+    public static StaticLayout create(CharSequence source, int bufstart, int bufend,
+                                      TextPaint paint, int outerWidth, Alignment align,
+                                      float spacingMult, float spacingAdd,
+                                      boolean includePad, TruncateAt ellipsize,
+                                      int ellipsisWidth, int maxLines) {
         ensureInitialized();
 
+        // Not shared between calls as layouts can be created from
+        // several threads at once.
+        final Object[] constructorArgs = new Object[sConstructorArgsCount];
+
         try {
-            sConstructorArgs[0] = source;
-            sConstructorArgs[1] = bufstart;
-            sConstructorArgs[2] = bufend;
-            sConstructorArgs[3] = paint;
-            sConstructorArgs[4] = outerWidth;
-            sConstructorArgs[5] = align;
-            sConstructorArgs[6] = sTextDirection;
-            sConstructorArgs[7] = spacingMult;
-            sConstructorArgs[8] = spacingAdd;
-            sConstructorArgs[9] = includePad;
-            sConstructorArgs[10] = ellipsize;
-            sConstructorArgs[11] = ellipsisWidth;
-            sConstructorArgs[12] = maxLines;
-
-            return sConstructor.newInstance(sConstructorArgs);
+            constructorArgs[0] = source;
+            constructorArgs[1] = bufstart;
+            constructorArgs[2] = bufend;
+            constructorArgs[3] = paint;
+            constructorArgs[4] = outerWidth;
+            constructorArgs[5] = align;
+            constructorArgs[6] = sTextDirection;
+            constructorArgs[7] = spacingMult;
+            constructorArgs[8] = spacingAdd;
+            constructorArgs[9] = includePad;
+            constructorArgs[10] = ellipsize;
+            constructorArgs[11] = ellipsisWidth;
+            constructorArgs[12] = maxLines;
+
+            return sConstructor.newInstance(constructorArgs);
         } catch (Exception e) {
             throw new IllegalStateException("Error creating StaticLayout with max lines: " + e);
         }
@@ -55,6 +55,7 @@ public class TextElement extends AbstractUIElement {
 
     private Layout mLayout;
     private BoringLayout mSavedLayout;
+    private TextLines mPrecomputedLines;
 
     private final TextPaint mPaint;
     private TextUtils.TruncateAt mEllipsize;
@@ -291,6 +292,8 @@ public class TextElement extends AbstractUIElement {
     }
 
     private void recreateLayout() {
+        mPrecomputedLines = null;
+
         if (mLayout == null) {
             return;
         }
@@ -310,7 +313,7 @@ public class TextElement extends AbstractUIElement {
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if (mLayout == null) {
+        if (mLayout == null && mPrecomputedLines == null) {
             return;
         }
 
@@ -326,7 +329,11 @@ public class TextElement extends AbstractUIElement {
         canvas.clipRect(clipLeft, clipTop, clipRight, clipBottom);
 
         canvas.translate(getPaddingLeft(), getPaddingTop());
-        mLayout.draw(canvas);
+        if (mLayout != null) {
+            mLayout.draw(canvas);
+        } else {
+            mPrecomputedLines.draw(canvas, mText, mPaint);
+        }
 
         canvas.restoreToCount(saveCount);
     }
@@ -341,6 +348,9 @@ public class TextElement extends AbstractUIElement {
         final int paddingLeft = getPaddingLeft();
         final int paddingRight = getPaddingRight();
 
+        // Measuring always breaks the text again.
+        mPrecomputedLines = null;
+
         int width;
         int height;
 
@@ -504,6 +514,37 @@ public class TextElement extends AbstractUIElement {
         return mMaxLines;
     }
 
+    /**
+     * The layout used to draw the text, or null if the element hasn't
+     * been measured yet.
+     */
+    public Layout getLayout() {
+        return mLayout;
+    }
+
+    /**
+     * Returns the lines the text is drawn with, or null if the element
+     * hasn't been measured yet.
+     */
+    public TextLines getTextLines() {
+        if (mPrecomputedLines != null) {
+            return mPrecomputedLines;
+        }
+
+        return (mLayout != null ? TextLines.fromLayout(mLayout, mMaxLines) : null);
+    }
+
+    /**
+     * Draws the text with lines that were broken while measuring an
+     * element with the same text, paint and width, instead of measuring
+     * it. The element's measured dimension must be set along with them.
+     * Discarded if the element is measured again.
+     */
+    public void setPrecomputedLines(TextLines lines) {
+        mPrecomputedLines = lines;
+        invalidate();
+    }
+
     @Override
     public void setPadding(int left, int top, int right, int bottom) {
         super.setPadding(left, top, right, bottom);
@@ -516,6 +557,7 @@ public class TextElement extends AbstractUIElement {
         }
 
         mText = text;
+        mPrecomputedLines = null;
         checkForRelayout();
     }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.canvas;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.Layout;
+
+/**
+ * Line breaks of a laid out block of plain text, packed in an int array.
+ * Lets a {@link TextElement} draw text it was measured with before
+ * without breaking it into lines again.
+ */
+public final class TextLines {
+    /**
+     * Ints taken by each line: start, end, baseline, left edge as float
+     * bits, ellipsis start and ellipsis count.
+     */
+    public static final int INTS_PER_LINE = 6;
+
+    private static final String ELLIPSIS = "\u2026";
+
+    private static final int START = 0;
+    private static final int END = 1;
+    private static final int BASELINE = 2;
+    private static final int LEFT = 3;
+    private static final int ELLIPSIS_START = 4;
+    private static final int ELLIPSIS_COUNT = 5;
+
+    private final int[] mData;
+    private final int mOffset;
+    private final int mLineCount;
+
+    /**
+     * Wraps the given number of lines packed in the array from the given
+     * offset. The array is not copied so it must not change afterwards.
+     */
+    public TextLines(int[] data, int offset, int lineCount) {
+        if (offset < 0 || lineCount < 0 || offset + lineCount * INTS_PER_LINE > data.length) {
+            throw new IllegalArgumentException("Lines out of bounds");
+        }
+
+        mData = data;
+        mOffset = offset;
+        mLineCount = lineCount;
+    }
+
+    /**
+     * Packs the first lines of the given layout, up to the given count.
+     */
+    public static TextLines fromLayout(Layout layout, int maxLines) {
+        final int lineCount = Math.min(maxLines, layout.getLineCount());
+        final int[] data = new int[lineCount * INTS_PER_LINE];
+
+        for (int i = 0; i < lineCount; i++) {
+            final int index = i * INTS_PER_LINE;
+            data[index + START] = layout.getLineStart(i);
+            data[index + END] = layout.getLineEnd(i);
+            data[index + BASELINE] = layout.getLineBaseline(i);
+            data[index + LEFT] = Float.floatToIntBits(layout.getLineLeft(i));
+            data[index + ELLIPSIS_START] = layout.getEllipsisStart(i);
+            data[index + ELLIPSIS_COUNT] = layout.getEllipsisCount(i);
+        }
+
+        return new TextLines(data, 0, lineCount);
+    }
+
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    private int get(int line, int field) {
+        return mData[mOffset + line * INTS_PER_LINE + field];
+    }
+
+    public int getLineStart(int line) {
+        return get(line, START);
+    }
+
+    public int getLineEnd(int line) {
+        return get(line, END);
+    }
+
+    public int getLineBaseline(int line) {
+        return get(line, BASELINE);
+    }
+
+    public float getLineLeft(int line) {
+        return Float.intBitsToFloat(get(line, LEFT));
+    }
+
+    public int getEllipsisStart(int line) {
+        return get(line, ELLIPSIS_START);
+    }
+
+    public int getEllipsisCount(int line) {
+        return get(line, ELLIPSIS_COUNT);
+    }
+
+    /**
+     * Copies the packed lines into the given array, from the given offset.
+     */
+    public void copyTo(int[] dest, int destOffset) {
+        System.arraycopy(mData, mOffset, dest, destOffset, mLineCount * INTS_PER_LINE);
+    }
+
+    /**
+     * Draws the given text, which must be the one the lines were broken
+     * from, line by line. Spans are ignored.
+     */
+    public void draw(Canvas canvas, CharSequence text, Paint paint) {
+        final int length = text.length();
+
+        for (int i = 0; i < mLineCount; i++) {
+            final int start = Math.min(getLineStart(i), length);
+            int end = Math.min(getLineEnd(i), length);
+            if (end > start && text.charAt(end - 1) == '\n') {
+                end--;
+            }
+
+            float x = getLineLeft(i);
+            final float y = getLineBaseline(i);
+
+            final int ellipsisCount = getEllipsisCount(i);
+            if (ellipsisCount == 0) {
+                canvas.drawText(text, start, end, x, y, paint);
+                continue;
+            }
+
+            final int ellipsisStart = Math.min(start + getEllipsisStart(i), end);
+            final int ellipsisEnd = Math.min(ellipsisStart + ellipsisCount, end);
+
+            canvas.drawText(text, start, ellipsisStart, x, y, paint);
+            x += paint.measureText(text, start, ellipsisStart);
+
+            canvas.drawText(ELLIPSIS, x, y, paint);
+            x += paint.measureText(ELLIPSIS);
+
+            if (ellipsisEnd < end) {
+                canvas.drawText(text, ellipsisEnd, end, x, y, paint);
+            }
+        }
+    }
+}
@@ -121,6 +121,14 @@ public abstract class UIElementGroup extends AbstractUIElement {
         requestLayout();
     }
 
+    public int getElementCount() {
+        return mElements.size();
+    }
+
+    public UIElement getElementAt(int index) {
+        return mElements.get(index);
+    }
+
     public UIElement findElementById(int id) {
         for (UIElement element : mElements) {
             if (element.getId() == id) {
@@ -30,14 +30,22 @@ import android.util.Xml;
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UIElementInflater {
     private static final String LOGTAG = "UIElementInflater";
     private static final boolean DEBUG = false;
 
     private final Context mContext;
-    private final Object[] mConstructorArgs = new Object[2];
+
+    // Each thread gets its own constructor arguments so that elements can be
+    // inflated concurrently from several layout workers.
+    private final ThreadLocal<Object[]> mConstructorArgs = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return new Object[2];
+        }
+    };
 
     private static UIElementInflater sInstance;
 
@@ -46,8 +54,8 @@ public class UIElementInflater {
         AttributeSet.class
     };
 
-    private static final HashMap<String, Constructor<? extends UIElement>> sConstructorMap =
-            new HashMap<String, Constructor<? extends UIElement>>();
+    private static final ConcurrentHashMap<String, Constructor<? extends UIElement>> sConstructorMap =
+            new ConcurrentHashMap<String, Constructor<? extends UIElement>>();
 
     private static final String TAG_MERGE = "merge";
 
@@ -91,99 +99,99 @@ public class UIElementInflater {
 
     public UIElement inflate(XmlPullParser parser, UIElementHost host,
                              UIElementGroup root, boolean attachToRoot) {
-        synchronized (mConstructorArgs) {
-            final AttributeSet attrs = Xml.asAttributeSet(parser);
-            mConstructorArgs[0] = host;
-
-            UIElement result = root;
-
-            try {
-                // Look for the root node.
-                int type;
-                while ((type = parser.next()) != XmlPullParser.START_TAG &&
-                        type != XmlPullParser.END_DOCUMENT) {
-                    // Empty
-                }
+        final AttributeSet attrs = Xml.asAttributeSet(parser);
 
-                if (type != XmlPullParser.START_TAG) {
-                    throw new InflateException(parser.getPositionDescription()
-                            + ": No start tag found!");
-                }
+        final Object[] constructorArgs = mConstructorArgs.get();
+        constructorArgs[0] = host;
 
-                final String name = parser.getName();
+        UIElement result = root;
 
-                if (DEBUG) {
-                    Log.d(LOGTAG, "**************************");
-                    Log.d(LOGTAG, "Creating root view: " + name);
-                    Log.d(LOGTAG, "**************************");
-                }
+        try {
+            // Look for the root node.
+            int type;
+            while ((type = parser.next()) != XmlPullParser.START_TAG &&
+                    type != XmlPullParser.END_DOCUMENT) {
+                // Empty
+            }
 
-                if (TAG_MERGE.equals(name)) {
-                    if (root == null || !attachToRoot) {
-                        throw new InflateException("<merge /> can be used only with a valid "
-                                + "ViewGroup root and attachToRoot=true");
-                    }
+            if (type != XmlPullParser.START_TAG) {
+                throw new InflateException(parser.getPositionDescription()
+                        + ": No start tag found!");
+            }
 
-                    rInflate(parser, root, attrs, false);
-                } else {
-                    // Temp is the root view that was found in the xml
-                    UIElement temp = createViewFromTag(root, name, attrs);
-                    LayoutParams params = null;
-
-                    if (root != null) {
-                        if (DEBUG) {
-                            Log.d(LOGTAG, "Creating params from root: " + root);
-                        }
-
-                        // Create layout params that match root, if supplied
-                        params = root.generateLayoutParams(attrs);
-                        if (!attachToRoot) {
-                            // Set the layout params for temp if we are not
-                            // attaching. (If we are, we use addView, below)
-                            temp.setLayoutParams(params);
-                        }
-                    }
+            final String name = parser.getName();
 
-                    if (DEBUG) {
-                        Log.d(LOGTAG, "-----> start inflating children");
-                    }
+            if (DEBUG) {
+                Log.d(LOGTAG, "**************************");
+                Log.d(LOGTAG, "Creating root view: " + name);
+                Log.d(LOGTAG, "**************************");
+            }
 
-                    // Inflate all children under temp
-                    rInflate(parser, temp, attrs, true);
+            if (TAG_MERGE.equals(name)) {
+                if (root == null || !attachToRoot) {
+                    throw new InflateException("<merge /> can be used only with a valid "
+                            + "ViewGroup root and attachToRoot=true");
+                }
+
+                rInflate(parser, root, attrs, false);
+            } else {
+                // Temp is the root view that was found in the xml
+                UIElement temp = createViewFromTag(root, name, attrs);
+                LayoutParams params = null;
+
+                if (root != null) {
                     if (DEBUG) {
-                        Log.d(LOGTAG, "-----> done inflating children");
+                        Log.d(LOGTAG, "Creating params from root: " + root);
                     }
 
-                    // We are supposed to attach all the views we found (int temp)
-                    // to root. Do that now.
-                    if (root != null && attachToRoot) {
-                        root.addElement(temp, params);
+                    // Create layout params that match root, if supplied
+                    params = root.generateLayoutParams(attrs);
+                    if (!attachToRoot) {
+                        // Set the layout params for temp if we are not
+                        // attaching. (If we are, we use addView, below)
+                        temp.setLayoutParams(params);
                     }
+                }
 
-                    // Decide whether to return the root that was passed in or the
-                    // top view found in xml.
-                    if (root == null || !attachToRoot) {
-                        result = temp;
-                    }
+                if (DEBUG) {
+                    Log.d(LOGTAG, "-----> start inflating children");
                 }
-            } catch (XmlPullParserException e) {
-                InflateException ex = new InflateException(e.getMessage());
-                ex.initCause(e);
-                throw ex;
-            } catch (IOException e) {
-                InflateException ex = new InflateException(
-                        parser.getPositionDescription()
-                                + ": " + e.getMessage());
-                ex.initCause(e);
-                throw ex;
-            } finally {
-                // Don't retain static reference on host.
-                mConstructorArgs[0] = null;
-                mConstructorArgs[1] = null;
-            }
 
-            return result;
+                // Inflate all children under temp
+                rInflate(parser, temp, attrs, true);
+                if (DEBUG) {
+                    Log.d(LOGTAG, "-----> done inflating children");
+                }
+
+                // We are supposed to attach all the views we found (int temp)
+                // to root. Do that now.
+                if (root != null && attachToRoot) {
+                    root.addElement(temp, params);
+                }
+
+                // Decide whether to return the root that was passed in or the
+                // top view found in xml.
+                if (root == null || !attachToRoot) {
+                    result = temp;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            InflateException ex = new InflateException(e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        } catch (IOException e) {
+            InflateException ex = new InflateException(
+                    parser.getPositionDescription()
+                            + ": " + e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        } finally {
+            // Don't retain static reference on host.
+            constructorArgs[0] = null;
+            constructorArgs[1] = null;
         }
+
+        return result;
     }
 
     public final UIElement createElement(String name, String prefix, AttributeSet attrs)
@@ -201,7 +209,7 @@ public class UIElementInflater {
                 sConstructorMap.put(name, constructor);
             }
 
-            Object[] args = mConstructorArgs;
+            Object[] args = mConstructorArgs.get();
             args[1] = attrs;
 
             return constructor.newInstance(args);
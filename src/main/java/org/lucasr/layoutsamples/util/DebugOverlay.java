@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.util;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.Locale;
+
+/**
+ * Paints how long a row took to measure, lay out and draw on top of it,
+ * along with the state of its pre-laid out content, if any. Rows only
+ * pay for a static flag check while the overlay is disabled.
+ */
+public class DebugOverlay {
+    public enum CacheState {
+        // The row doesn't use pre-laid out content.
+        NONE,
+
+        HIT,
+        MISS,
+
+        // The cached content was built from an outdated item.
+        REBUILD
+    }
+
+    private static final int TEXT_SIZE_SP = 10;
+    private static final int BACKGROUND_COLOR = 0xb0000000;
+
+    private static volatile boolean sEnabled;
+
+    private final View mView;
+
+    private long mMeasureNs;
+    private long mLayoutNs;
+    private long mDrawNs;
+
+    private CacheState mCacheState = CacheState.NONE;
+    private long mCreationTime = -1;
+    private boolean mBuiltOnMainThread;
+
+    private Paint mTextPaint;
+    private Paint mBackgroundPaint;
+
+    public DebugOverlay(View view) {
+        mView = view;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Re-measures and redraws the given view hierarchy so that the
+     * overlay shows up or goes away right away.
+     */
+    public static void refresh(View view) {
+        view.requestLayout();
+        view.invalidate();
+
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+
+            final int count = group.getChildCount();
+            for (int i = 0; i < count; i++) {
+                refresh(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the start time to be passed to one of the end methods, or
+     * zero if the overlay is disabled.
+     */
+    public long begin() {
+        return (sEnabled ? System.nanoTime() : 0);
+    }
+
+    public void endMeasure(long start) {
+        if (start != 0) {
+            mMeasureNs = System.nanoTime() - start;
+        }
+    }
+
+    public void endLayout(long start) {
+        if (start != 0) {
+            mLayoutNs = System.nanoTime() - start;
+        }
+    }
+
+    public void endDraw(long start) {
+        if (start != 0) {
+            mDrawNs = System.nanoTime() - start;
+        }
+    }
+
+    public void setCacheState(CacheState cacheState) {
+        mCacheState = cacheState;
+    }
+
+    /**
+     * Sets when, in {@link SystemClock#uptimeMillis()} time, the row's
+     * content was laid out and on which thread.
+     */
+    public void setCreationTime(long creationTime, boolean builtOnMainThread) {
+        mCreationTime = creationTime;
+        mBuiltOnMainThread = builtOnMainThread;
+    }
+
+    public void clearCreationTime() {
+        mCreationTime = -1;
+    }
+
+    private void ensurePaints() {
+        if (mTextPaint != null) {
+            return;
+        }
+
+        final DisplayMetrics metrics = mView.getResources().getDisplayMetrics();
+
+        mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mTextPaint.setColor(Color.WHITE);
+        mTextPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP,
+                                                         TEXT_SIZE_SP, metrics));
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(BACKGROUND_COLOR);
+    }
+
+    private static float toMillis(long ns) {
+        return ns / 1000000f;
+    }
+
+    private String getContentLine() {
+        final String cacheState = mCacheState.name().toLowerCase(Locale.US);
+        if (mCreationTime < 0) {
+            return cacheState;
+        }
+
+        final float age = (SystemClock.uptimeMillis() - mCreationTime) / 1000f;
+        return String.format(Locale.US, "%s, built %.1fs ago on %s", cacheState, age,
+                             mBuiltOnMainThread ? "main" : "worker");
+    }
+
+    /**
+     * Draws the overlay in the top right corner of the view, if enabled.
+     * Must be called after the view's content is drawn.
+     */
+    public void draw(Canvas canvas) {
+        if (!sEnabled) {
+            return;
+        }
+
+        ensurePaints();
+
+        final String[] lines = new String[] {
+            String.format(Locale.US, "m %.2f l %.2f d %.2f ms",
+                          toMillis(mMeasureNs), toMillis(mLayoutNs), toMillis(mDrawNs)),
+            getContentLine()
+        };
+
+        final Paint.FontMetrics fontMetrics = mTextPaint.getFontMetrics();
+        final float lineHeight = fontMetrics.descent - fontMetrics.ascent;
+        final float padding = lineHeight / 4;
+
+        float maxWidth = 0;
+        for (String line : lines) {
+            maxWidth = Math.max(maxWidth, mTextPaint.measureText(line));
+        }
+
+        final float right = mView.getWidth();
+        final float left = right - maxWidth - 2 * padding;
+        final float bottom = lines.length * lineHeight + 2 * padding;
+
+        canvas.drawRect(left, 0, right, bottom, mBackgroundPaint);
+
+        float baseline = padding - fontMetrics.ascent;
+        for (String line : lines) {
+            canvas.drawText(line, left + padding, baseline, mTextPaint);
+            baseline += lineHeight;
+        }
+    }
+}
@@ -18,10 +18,13 @@ package org.lucasr.layoutsamples.util;
 
 import android.content.Context;
 import android.widget.ImageView;
+import android.widget.ImageView.ScaleType;
 
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 
 import org.lucasr.layoutsamples.adapter.TweetPresenter.UpdateFlags;
+import org.lucasr.layoutsamples.app.App;
 import org.lucasr.layoutsamples.app.R;
 import org.lucasr.layoutsamples.canvas.ImageElement;
 import org.lucasr.layoutsamples.widget.ImageElementTarget;
@@ -35,25 +38,51 @@ public class ImageUtils {
     public static void loadImage(Context context, ImageView view, String url,
                                  EnumSet<UpdateFlags> flags) {
         if (!flags.contains(UpdateFlags.NO_IMAGE_LOADING)) {
-            Picasso.with(context)
-                   .load(url)
-                   .placeholder(R.drawable.tweet_placeholder_image)
-                   .error(R.drawable.tweet_placeholder_image)
-                   .into(view);
+            App.getInstance(context).getPicasso()
+                    .load(url)
+                    .placeholder(R.drawable.tweet_placeholder_image)
+                    .error(R.drawable.tweet_placeholder_image)
+                    .into(view);
         } else {
             view.setImageResource(R.drawable.tweet_placeholder_image);
         }
     }
 
+    /**
+     * Creates a request for the image at the given url, decoded at the
+     * size of the given element if it's already laid out. Requests for
+     * the same element size share entries in the memory cache.
+     */
+    public static RequestCreator createRequest(Picasso picasso, ImageElement element,
+                                               String url) {
+        final RequestCreator request = picasso.load(url);
+
+        final int width = element.getWidth() - element.getPaddingLeft() -
+                          element.getPaddingRight();
+        final int height = element.getHeight() - element.getPaddingTop() -
+                           element.getPaddingBottom();
+
+        if (width > 0 && height > 0) {
+            request.resize(width, height);
+
+            if (element.getScaleType() == ScaleType.CENTER_CROP) {
+                request.centerCrop();
+            } else {
+                request.centerInside();
+            }
+        }
+
+        return request;
+    }
+
     public static void loadImage(Context context, ImageElement element,
                                  ImageElementTarget target, String url,
                                  EnumSet<UpdateFlags> flags) {
         if (!flags.contains(UpdateFlags.NO_IMAGE_LOADING)) {
-            Picasso.with(context)
-                   .load(url)
-                   .placeholder(R.drawable.tweet_placeholder_image)
-                   .error(R.drawable.tweet_placeholder_image)
-                   .into(target);
+            createRequest(App.getInstance(context).getPicasso(), element, url)
+                    .placeholder(R.drawable.tweet_placeholder_image)
+                    .error(R.drawable.tweet_placeholder_image)
+                    .into(target);
         } else {
             element.setImageResource(R.drawable.tweet_placeholder_image);
         }
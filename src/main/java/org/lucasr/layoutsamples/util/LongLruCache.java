@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * LRU cache keyed by a long id and an int variant, such as a layout
+ * configuration id. Entries live in an open addressed table and are
+ * chained in recency order through index links stored alongside them.
+ * The table only grows, when the cache is more than half full.
+ *
+ * Lookups never take the cache's lock, so they don't block on writers,
+ * and never allocate. Entries are immutable and published through an
+ * atomic array: a lookup racing with a write may miss, but never returns
+ * a value for another key. Lookups don't reorder the recency list
+ * either, they only mark the entry as accessed. Marked entries that
+ * reach the least recently used end are moved back to the head instead
+ * of being evicted.
+ *
+ * Like {@link android.util.LruCache}, entries are sized by
+ * {@link #sizeOf(long, int, Object)} and evicted from the least recently
+ * used end once the total size exceeds the maximum size.
+ */
+public class LongLruCache<V> {
+    public interface EntryVisitor<V> {
+        public void visitEntry(long id, int variant, V value);
+    }
+
+    private static final class Entry {
+        final long id;
+        final int variant;
+        final Object value;
+        final int size;
+
+        // Set by lookups, cleared when the entry is moved back to the head.
+        volatile boolean accessed;
+
+        Entry(long id, int variant, Object value, int size) {
+            this.id = id;
+            this.variant = variant;
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Replaced as a whole when growing, only written with the lock held.
+    private volatile AtomicReferenceArray<Entry> mTable;
+
+    // Recency links, from the most recently used entry at the head to
+    // the least recently used one at the tail.
+    private int[] mPrevious;
+    private int[] mNext;
+    private int mHead = NONE;
+    private int mTail = NONE;
+
+    private int mCount;
+    private long mSize;
+    private long mMaxSize;
+
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private int mEvictionCount;
+
+    public LongLruCache(long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+
+        mMaxSize = maxSize;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mPrevious = new int[capacity];
+        mNext = new int[capacity];
+        mTable = new AtomicReferenceArray<Entry>(capacity);
+    }
+
+    private static int getIdealSlot(long id, int variant, int capacity) {
+        long hash = id * 0x9e3779b97f4a7c15L + variant;
+        hash ^= (hash >>> 32);
+        hash ^= (hash >>> 16);
+
+        return (int) hash & (capacity - 1);
+    }
+
+    private int find(long id, int variant) {
+        final AtomicReferenceArray<Entry> table = mTable;
+        final int mask = table.length() - 1;
+
+        int slot = getIdealSlot(id, variant, table.length());
+        Entry entry;
+        while ((entry = table.get(slot)) != null) {
+            if (entry.id == id && entry.variant == variant) {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return NONE;
+    }
+
+    private void linkAtHead(int slot) {
+        mPrevious[slot] = NONE;
+        mNext[slot] = mHead;
+
+        if (mHead != NONE) {
+            mPrevious[mHead] = slot;
+        } else {
+            mTail = slot;
+        }
+
+        mHead = slot;
+    }
+
+    private void unlink(int slot) {
+        final int previous = mPrevious[slot];
+        final int next = mNext[slot];
+
+        if (previous != NONE) {
+            mNext[previous] = next;
+        } else {
+            mHead = next;
+        }
+
+        if (next != NONE) {
+            mPrevious[next] = previous;
+        } else {
+            mTail = previous;
+        }
+    }
+
+    private void insert(Entry entry) {
+        final AtomicReferenceArray<Entry> table = mTable;
+        final int mask = table.length() - 1;
+
+        int slot = getIdealSlot(entry.id, entry.variant, table.length());
+        while (table.get(slot) != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        table.set(slot, entry);
+        linkAtHead(slot);
+
+        mCount++;
+        mSize += entry.size;
+    }
+
+    /**
+     * Moves the entry at one slot to another, empty, one keeping its
+     * position in the recency list. The entry is written to its new slot
+     * before being cleared from the old one so that concurrent lookups
+     * see it at least once.
+     */
+    private void move(int from, int to) {
+        final AtomicReferenceArray<Entry> table = mTable;
+        table.set(to, table.get(from));
+
+        final int previous = mPrevious[from];
+        final int next = mNext[from];
+        mPrevious[to] = previous;
+        mNext[to] = next;
+
+        if (previous != NONE) {
+            mNext[previous] = to;
+        } else {
+            mHead = to;
+        }
+
+        if (next != NONE) {
+            mPrevious[next] = to;
+        } else {
+            mTail = to;
+        }
+
+        table.set(from, null);
+    }
+
+    private void removeSlot(int slot) {
+        final AtomicReferenceArray<Entry> table = mTable;
+
+        unlink(slot);
+        mCount--;
+        mSize -= table.get(slot).size;
+        table.set(slot, null);
+
+        // Shift back the entries following the hole in the probe sequence
+        // that would no longer be reachable from their ideal slot.
+        final int mask = table.length() - 1;
+
+        int hole = slot;
+        int current = (slot + 1) & mask;
+        Entry entry;
+        while ((entry = table.get(current)) != null) {
+            final int ideal = getIdealSlot(entry.id, entry.variant, table.length());
+
+            final boolean reachable = (hole <= current ?
+                                       (ideal > hole && ideal <= current) :
+                                       (ideal > hole || ideal <= current));
+            if (!reachable) {
+                move(current, hole);
+                hole = current;
+            }
+
+            current = (current + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        final AtomicReferenceArray<Entry> table = mTable;
+        final int[] previous = mPrevious;
+        int slot = mTail;
+
+        // The new table is only published once it's filled in, lookups
+        // keep using the old one meanwhile.
+        final int capacity = table.length() * 2;
+        final AtomicReferenceArray<Entry> grown = new AtomicReferenceArray<Entry>(capacity);
+        mPrevious = new int[capacity];
+        mNext = new int[capacity];
+        mHead = NONE;
+        mTail = NONE;
+        mCount = 0;
+        mSize = 0;
+
+        // Re-inserting from the least recently used entry keeps the order.
+        final int mask = capacity - 1;
+        while (slot != NONE) {
+            final Entry entry = table.get(slot);
+
+            int newSlot = getIdealSlot(entry.id, entry.variant, capacity);
+            while (grown.get(newSlot) != null) {
+                newSlot = (newSlot + 1) & mask;
+            }
+
+            grown.set(newSlot, entry);
+            linkAtHead(newSlot);
+            mCount++;
+            mSize += entry.size;
+
+            slot = previous[slot];
+        }
+
+        mTable = grown;
+    }
+
+    /**
+     * Returns the value cached for the given key, if any. Doesn't lock,
+     * and may miss an entry that is being written concurrently.
+     */
+    @SuppressWarnings("unchecked")
+    public final V get(long id, int variant) {
+        final AtomicReferenceArray<Entry> table = mTable;
+        final int mask = table.length() - 1;
+
+        int slot = getIdealSlot(id, variant, table.length());
+        Entry entry;
+        while ((entry = table.get(slot)) != null) {
+            if (entry.id == id && entry.variant == variant) {
+                if (!entry.accessed) {
+                    entry.accessed = true;
+                }
+
+                mHitCount.incrementAndGet();
+                return (V) entry.value;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        mMissCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the value for the given key, making it the most recently
+     * used entry. Returns the value previously cached for the key, if
+     * any.
+     */
+    @SuppressWarnings("unchecked")
+    public final V put(long id, int variant, V value) {
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+
+        V previous = null;
+
+        synchronized (this) {
+            final Entry entry = new Entry(id, variant, value, safeSizeOf(id, variant, value));
+
+            final int slot = find(id, variant);
+            if (slot != NONE) {
+                final AtomicReferenceArray<Entry> table = mTable;
+                final Entry old = table.get(slot);
+
+                previous = (V) old.value;
+                mSize += entry.size - old.size;
+                table.set(slot, entry);
+
+                if (slot != mHead) {
+                    unlink(slot);
+                    linkAtHead(slot);
+                }
+            } else {
+                if (2 * (mCount + 1) > mTable.length()) {
+                    grow();
+                }
+
+                insert(entry);
+            }
+        }
+
+        if (previous != null) {
+            entryRemoved(false, id, variant, previous, value);
+        }
+
+        trimToSize(mMaxSize);
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public final V remove(long id, int variant) {
+        final V previous;
+
+        synchronized (this) {
+            final int slot = find(id, variant);
+            if (slot == NONE) {
+                return null;
+            }
+
+            previous = (V) mTable.get(slot).value;
+            removeSlot(slot);
+        }
+
+        entryRemoved(false, id, variant, previous, null);
+        return previous;
+    }
+
+    /**
+     * Evicts the least recently used entries until the total size is at
+     * most the given size. Entries looked up since they were last moved
+     * get moved back to the head once instead.
+     */
+    @SuppressWarnings("unchecked")
+    public void trimToSize(long maxSize) {
+        while (true) {
+            final Entry entry;
+
+            synchronized (this) {
+                if (mSize <= maxSize || mTail == NONE) {
+                    break;
+                }
+
+                final int slot = mTail;
+                entry = mTable.get(slot);
+
+                if (entry.accessed && maxSize >= 0) {
+                    entry.accessed = false;
+                    if (slot != mHead) {
+                        unlink(slot);
+                        linkAtHead(slot);
+                    }
+
+                    continue;
+                }
+
+                removeSlot(slot);
+                mEvictionCount++;
+            }
+
+            entryRemoved(true, entry.id, entry.variant, (V) entry.value, null);
+        }
+    }
+
+    /**
+     * Visits all entries, from the most to the least recently used one,
+     * without affecting their recency. The visitor is called with the
+     * cache's lock held so it must not use the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public final synchronized void visitEntries(EntryVisitor<V> visitor) {
+        final AtomicReferenceArray<Entry> table = mTable;
+
+        int slot = mHead;
+        while (slot != NONE) {
+            final Entry entry = table.get(slot);
+            visitor.visitEntry(entry.id, entry.variant, (V) entry.value);
+            slot = mNext[slot];
+        }
+    }
+
+    public final void evictAll() {
+        trimToSize(-1);
+    }
+
+    private int safeSizeOf(long id, int variant, V value) {
+        final int size = sizeOf(id, variant, value);
+        if (size < 0) {
+            throw new IllegalStateException("Negative size: " + id + "/" + variant);
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the size of the entry for the given key, in user-defined
+     * units. The size of an entry must not change while it is cached.
+     * Called with the cache's lock held. Defaults to 1.
+     */
+    protected int sizeOf(long id, int variant, V value) {
+        return 1;
+    }
+
+    /**
+     * Called, outside of the cache's lock, for entries that have been
+     * evicted or removed, or replaced by a put.
+     */
+    protected void entryRemoved(boolean evicted, long id, int variant, V oldValue,
+                                V newValue) {
+    }
+
+    public final synchronized long size() {
+        return mSize;
+    }
+
+    public final synchronized long maxSize() {
+        return mMaxSize;
+    }
+
+    public final synchronized int count() {
+        return mCount;
+    }
+
+    public final int hitCount() {
+        return mHitCount.get();
+    }
+
+    public final int missCount() {
+        return mMissCount.get();
+    }
+
+    public final synchronized int evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public final synchronized String toString() {
+        final int hits = mHitCount.get();
+        final int misses = mMissCount.get();
+        final int accesses = hits + misses;
+        final int hitPercent = (accesses != 0 ? (100 * hits / accesses) : 0);
+
+        return String.format("LongLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                             mMaxSize, hits, misses, hitPercent);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.lucasr.layoutsamples.util;
+
+import android.os.Process;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named worker threads running at a given process priority. The
+ * priority can be changed at any time and is applied to all live threads
+ * created by this factory.
+ */
+public class WorkerThreadFactory implements ThreadFactory {
+    private final String mName;
+    private final AtomicInteger mThreadCount = new AtomicInteger();
+
+    // Linux thread ids of the live workers, as used by Process.
+    private final Set<Integer> mThreadIds =
+            Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    private volatile int mPriority;
+
+    public WorkerThreadFactory(String name, int priority) {
+        mName = name;
+        mPriority = priority;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final int tid = Process.myTid();
+
+                // Registered before reading the priority so that a
+                // concurrent setPriority() is never missed.
+                mThreadIds.add(tid);
+                Process.setThreadPriority(mPriority);
+
+                try {
+                    runnable.run();
+                } finally {
+                    mThreadIds.remove(tid);
+                }
+            }
+        }, mName + "-" + mThreadCount.incrementAndGet());
+
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Sets the priority of all workers, see
+     * {@link Process#setThreadPriority(int, int)}.
+     */
+    public void setPriority(int priority) {
+        if (mPriority == priority) {
+            return;
+        }
+
+        mPriority = priority;
+
+        for (Integer tid : mThreadIds) {
+            try {
+                Process.setThreadPriority(tid, priority);
+            } catch (IllegalArgumentException e) {
+                // The thread exited meanwhile.
+            }
+        }
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.widget.TextView;
+
+/**
+ * TextView that can be handed a text layout built ahead of time, e.g. on
+ * a background thread. As long as the prebuilt layout matches the view's
+ * text and width, measuring and drawing use it directly instead of
+ * re-running line breaking on the main thread. Set the layout before the
+ * text it was built from, so that setting the text doesn't lay it out.
+ */
+public class PrecomputedTextView extends TextView {
+    private Layout mPrecomputedLayout;
+    private CharSequence mPrecomputedText;
+    private boolean mUsingPrecomputedLayout;
+
+    // Whether TextView built a layout of its own when the precomputed one
+    // couldn't be used.
+    private boolean mHasPlatformLayout;
+
+    // Not initialized as TextView's constructor may already set it.
+    private boolean mHorizontallyScrolling;
+
+    public PrecomputedTextView(Context context, AttributeSet attrs) {
+        this(context, attrs, android.R.attr.textViewStyle);
+    }
+
+    public PrecomputedTextView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    /**
+     * Sets the layout to use for the current text, or null to always lay
+     * out text as usual, along with the text it was built from. The layout
+     * must own its paint as its color is updated from the view's state
+     * when drawing.
+     */
+    public void setPrecomputedLayout(Layout layout, CharSequence text) {
+        if (mPrecomputedLayout == layout && mPrecomputedText == text) {
+            return;
+        }
+
+        mPrecomputedLayout = layout;
+        mPrecomputedText = text;
+
+        requestLayout();
+        invalidate();
+    }
+
+    public Layout getPrecomputedLayout() {
+        return mPrecomputedLayout;
+    }
+
+    @Override
+    public void setText(CharSequence text, BufferType type) {
+        if (mHasPlatformLayout && mPrecomputedLayout != null &&
+                TextUtils.equals(text, mPrecomputedText)) {
+            dropPlatformLayout();
+        }
+
+        super.setText(text, type);
+    }
+
+    @Override
+    public void setHorizontallyScrolling(boolean whether) {
+        mHorizontallyScrolling = whether;
+        super.setHorizontallyScrolling(whether);
+    }
+
+    /**
+     * Once TextView has a layout of its own, it lays out every new text
+     * right away. There's no API to drop that layout but changing the
+     * horizontal scrolling mode does, so it's toggled back and forth.
+     */
+    private void dropPlatformLayout() {
+        super.setHorizontallyScrolling(!mHorizontallyScrolling);
+        super.setHorizontallyScrolling(mHorizontallyScrolling);
+        mHasPlatformLayout = false;
+    }
+
+    private boolean canUsePrecomputedLayout(int widthMeasureSpec) {
+        final Layout layout = mPrecomputedLayout;
+        if (layout == null) {
+            return false;
+        }
+
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY) {
+            return false;
+        }
+
+        final int width = MeasureSpec.getSize(widthMeasureSpec) -
+                getCompoundPaddingLeft() - getCompoundPaddingRight();
+
+        // Ellipsized layouts wrap their text, so it's compared with the
+        // text the layout was built from instead.
+        return (layout.getWidth() == width &&
+                layout.getPaint().getTextSize() == getTextSize() &&
+                TextUtils.equals(mPrecomputedText, getText()));
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mUsingPrecomputedLayout = canUsePrecomputedLayout(widthMeasureSpec);
+        if (!mUsingPrecomputedLayout) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            mHasPlatformLayout = true;
+            return;
+        }
+
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+
+        final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
+        final int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+
+        int height = mPrecomputedLayout.getHeight() +
+                getExtendedPaddingTop() + getExtendedPaddingBottom();
+        height = Math.max(height, getSuggestedMinimumHeight());
+
+        if (heightMode == MeasureSpec.EXACTLY) {
+            height = heightSize;
+        } else if (heightMode == MeasureSpec.AT_MOST) {
+            height = Math.min(height, heightSize);
+        }
+
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mUsingPrecomputedLayout) {
+            super.onDraw(canvas);
+            return;
+        }
+
+        final TextPaint paint = mPrecomputedLayout.getPaint();
+        paint.setColor(getCurrentTextColor());
+        paint.drawableState = getDrawableState();
+
+        final int saveCount = canvas.getSaveCount();
+        canvas.save();
+
+        canvas.clipRect(getCompoundPaddingLeft(), getExtendedPaddingTop(),
+                        getWidth() - getCompoundPaddingRight(),
+                        getHeight() - getExtendedPaddingBottom());
+        canvas.translate(getCompoundPaddingLeft(), getExtendedPaddingTop());
+        mPrecomputedLayout.draw(canvas);
+
+        canvas.restoreToCount(saveCount);
+    }
+}
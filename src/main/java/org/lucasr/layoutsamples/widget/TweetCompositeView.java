@@ -17,6 +17,7 @@
 package org.lucasr.layoutsamples.widget;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
@@ -28,6 +29,7 @@ import android.widget.TextView;
 import org.lucasr.layoutsamples.adapter.Tweet;
 import org.lucasr.layoutsamples.adapter.TweetPresenter;
 import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.util.DebugOverlay;
 import org.lucasr.layoutsamples.util.ImageUtils;
 
 import java.util.EnumMap;
@@ -39,6 +41,7 @@ public class TweetCompositeView extends RelativeLayout implements TweetPresenter
     private final TextView mMessageText;
     private final ImageView mPostImage;
     private final EnumMap<Action, ImageView> mActionIcons;
+    private final DebugOverlay mDebugOverlay;
 
     public TweetCompositeView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
@@ -75,6 +78,8 @@ public class TweetCompositeView extends RelativeLayout implements TweetPresenter
 
             mActionIcons.put(action, icon);
         }
+
+        mDebugOverlay = new DebugOverlay(this);
     }
 
     @Override
@@ -82,6 +87,29 @@ public class TweetCompositeView extends RelativeLayout implements TweetPresenter
         return false;
     }
 
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final long start = mDebugOverlay.begin();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        mDebugOverlay.endMeasure(start);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        final long start = mDebugOverlay.begin();
+        super.onLayout(changed, left, top, right, bottom);
+        mDebugOverlay.endLayout(start);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final long start = mDebugOverlay.begin();
+        super.draw(canvas);
+        mDebugOverlay.endDraw(start);
+
+        mDebugOverlay.draw(canvas);
+    }
+
     @Override
     public void update(Tweet tweet, EnumSet<UpdateFlags> flags) {
         mAuthorText.setText(tweet.getAuthorName());
@@ -17,18 +17,20 @@
 package org.lucasr.layoutsamples.widget;
 
 import android.content.res.Resources;
+import android.graphics.Canvas;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.View.MeasureSpec;
 import android.view.ViewGroup.MarginLayoutParams;
 
-import com.squareup.picasso.Picasso;
 import com.squareup.picasso.Target;
 
 import org.lucasr.layoutsamples.adapter.Tweet;
 import org.lucasr.layoutsamples.adapter.TweetPresenter;
+import org.lucasr.layoutsamples.app.App;
 import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.async.ImagePrefetcher;
 import org.lucasr.layoutsamples.canvas.UIElementGroup;
 import org.lucasr.layoutsamples.canvas.ImageElement;
 import org.lucasr.layoutsamples.canvas.TextElement;
@@ -129,7 +131,7 @@ public class TweetElement extends UIElementGroup implements TweetPresenter {
             return;
         }
 
-        Picasso.with(getContext()).cancelRequest(target);
+        App.getInstance(getContext()).getPicasso().cancelRequest(target);
     }
 
     @Override
@@ -232,6 +234,41 @@ public class TweetElement extends UIElementGroup implements TweetPresenter {
         }
     }
 
+    private void drawElements(Canvas canvas, boolean images) {
+        final int saveCount = canvas.getSaveCount();
+        canvas.save();
+
+        canvas.clipRect(getLeft(), getTop(), getRight(), getBottom());
+        canvas.translate(getLeft(), getTop());
+
+        final int count = getElementCount();
+        for (int i = 0; i < count; i++) {
+            final UIElement element = getElementAt(i);
+
+            final boolean isImage = (element == mProfileImage || element == mPostImage);
+            if (isImage == images && element.getVisibility() == View.VISIBLE) {
+                element.draw(canvas);
+            }
+        }
+
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Draws everything but the profile and post images, i.e. the parts
+     * that don't change once the tweet is bound.
+     */
+    public void drawStaticContent(Canvas canvas) {
+        drawElements(canvas, false);
+    }
+
+    /**
+     * Draws only the profile and post images.
+     */
+    public void drawImages(Canvas canvas) {
+        drawElements(canvas, true);
+    }
+
     public void loadProfileImage(Tweet tweet, EnumSet<UpdateFlags> flags) {
         ImageUtils.loadImage(getContext(), mProfileImage, mProfileImageTarget,
                 tweet.getProfileImageUrl(), flags);
@@ -242,6 +279,18 @@ public class TweetElement extends UIElementGroup implements TweetPresenter {
                 tweet.getPostImageUrl(), flags);
     }
 
+    /**
+     * Prefetches the tweet's images at the size this element, which must
+     * be laid out, will show them at.
+     */
+    public void prefetchImages(Tweet tweet, long key, int position, ImagePrefetcher prefetcher) {
+        prefetcher.prefetch(key, position, mProfileImage, tweet.getProfileImageUrl());
+
+        if (mPostImage.getVisibility() != View.GONE) {
+            prefetcher.prefetch(key, position, mPostImage, tweet.getPostImageUrl());
+        }
+    }
+
     @Override
     public void update(Tweet tweet, EnumSet<UpdateFlags> flags) {
         mAuthorText.setText(tweet.getAuthorName());
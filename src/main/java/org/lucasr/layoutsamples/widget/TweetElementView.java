@@ -17,16 +17,20 @@
 package org.lucasr.layoutsamples.widget;
 
 import android.content.Context;
+import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
 
 import org.lucasr.layoutsamples.adapter.Tweet;
 import org.lucasr.layoutsamples.adapter.TweetPresenter;
 import org.lucasr.layoutsamples.canvas.UIElementView;
+import org.lucasr.layoutsamples.util.DebugOverlay;
 
 import java.util.EnumSet;
 
 public class TweetElementView extends UIElementView implements TweetPresenter {
+    private final DebugOverlay mDebugOverlay;
+
     public TweetElementView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
     }
@@ -34,6 +38,31 @@ public class TweetElementView extends UIElementView implements TweetPresenter {
     public TweetElementView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
         setUIElement(new TweetElement(this));
+
+        mDebugOverlay = new DebugOverlay(this);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final long start = mDebugOverlay.begin();
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        mDebugOverlay.endMeasure(start);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        final long start = mDebugOverlay.begin();
+        super.onLayout(changed, left, top, right, bottom);
+        mDebugOverlay.endLayout(start);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final long start = mDebugOverlay.begin();
+        super.draw(canvas);
+        mDebugOverlay.endDraw(start);
+
+        mDebugOverlay.draw(canvas);
     }
 
     @Override
@@ -17,17 +17,22 @@
 package org.lucasr.layoutsamples.widget;
 
 import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
-import android.widget.TextView;
 
 import org.lucasr.layoutsamples.adapter.Tweet;
 import org.lucasr.layoutsamples.adapter.TweetPresenter;
+import org.lucasr.layoutsamples.app.App;
 import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.async.AsyncElement;
+import org.lucasr.layoutsamples.async.AsyncTweetTextFactory;
+import org.lucasr.layoutsamples.util.DebugOverlay;
 import org.lucasr.layoutsamples.util.ImageUtils;
 
 import java.util.EnumMap;
@@ -35,11 +40,14 @@ import java.util.EnumSet;
 
 public class TweetLayoutView extends ViewGroup implements TweetPresenter {
     private final ImageView mProfileImage;
-    private final TextView mAuthorText;
-    private final TextView mMessageText;
+    private final PrecomputedTextView mAuthorText;
+    private final PrecomputedTextView mMessageText;
     private final ImageView mPostImage;
     private final EnumMap<Action, View> mActionIcons;
 
+    private final AsyncTweetTextFactory mTextFactory;
+    private final DebugOverlay mDebugOverlay;
+
     public TweetLayoutView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
     }
@@ -49,8 +57,8 @@ public class TweetLayoutView extends ViewGroup implements TweetPresenter {
 
         LayoutInflater.from(context).inflate(R.layout.tweet_layout_view, this, true);
         mProfileImage = (ImageView) findViewById(R.id.profile_image);
-        mAuthorText = (TextView) findViewById(R.id.author_text);
-        mMessageText = (TextView) findViewById(R.id.message_text);
+        mAuthorText = (PrecomputedTextView) findViewById(R.id.author_text);
+        mMessageText = (PrecomputedTextView) findViewById(R.id.message_text);
         mPostImage = (ImageView) findViewById(R.id.post_image);
 
         mActionIcons = new EnumMap(Action.class);
@@ -75,6 +83,45 @@ public class TweetLayoutView extends ViewGroup implements TweetPresenter {
 
             mActionIcons.put(action, findViewById(viewId));
         }
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.TweetLayoutView,
+                                                      defStyleAttr, 0);
+        final boolean usePrecomputedText =
+                a.getBoolean(R.styleable.TweetLayoutView_usePrecomputedText, false);
+        a.recycle();
+
+        if (usePrecomputedText) {
+            mTextFactory = App.getInstance(context).getTweetTextFactory();
+            mTextFactory.setTextPaints(mAuthorText.getPaint(), mMessageText.getPaint());
+        } else {
+            mTextFactory = null;
+        }
+
+        mDebugOverlay = new DebugOverlay(this);
+    }
+
+    private void updatePrecomputedText(Tweet tweet) {
+        if (DebugOverlay.isEnabled()) {
+            mDebugOverlay.setCacheState(mTextFactory.getCacheState(tweet));
+        }
+
+        final AsyncElement<Tweet, TweetTextElement> text = mTextFactory.get(tweet);
+        final TweetTextElement element = (text != null ? text.getElement() : null);
+
+        if (text != null) {
+            mDebugOverlay.setCreationTime(text.getCreationTime(), text.isBuiltOnMainThread());
+        } else {
+            mDebugOverlay.clearCreationTime();
+        }
+
+        if (element != null) {
+            mAuthorText.setPrecomputedLayout(element.getAuthorLayout(), element.getAuthorText());
+            mMessageText.setPrecomputedLayout(element.getMessageLayout(),
+                                              element.getMessageText());
+        } else {
+            mAuthorText.setPrecomputedLayout(null, null);
+            mMessageText.setPrecomputedLayout(null, null);
+        }
     }
 
     private void layoutView(View view, int left, int top, int width, int height) {
@@ -113,6 +160,7 @@ public class TweetLayoutView extends ViewGroup implements TweetPresenter {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final long start = mDebugOverlay.begin();
         final int widthSize = MeasureSpec.getSize(widthMeasureSpec);
 
         int widthUsed = 0;
@@ -158,10 +206,13 @@ public class TweetLayoutView extends ViewGroup implements TweetPresenter {
 
         int heightSize = heightUsed + getPaddingTop() + getPaddingBottom();
         setMeasuredDimension(widthSize, heightSize);
+
+        mDebugOverlay.endMeasure(start);
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        final long start = mDebugOverlay.begin();
         final int paddingLeft = getPaddingLeft();
         final int paddingTop = getPaddingTop();
 
@@ -199,6 +250,17 @@ public class TweetLayoutView extends ViewGroup implements TweetPresenter {
                        iconsWidth, icon.getMeasuredHeight());
             iconsLeft += iconsWidth;
         }
+
+        mDebugOverlay.endLayout(start);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final long start = mDebugOverlay.begin();
+        super.draw(canvas);
+        mDebugOverlay.endDraw(start);
+
+        mDebugOverlay.draw(canvas);
     }
 
     @Override
@@ -213,6 +275,12 @@ public class TweetLayoutView extends ViewGroup implements TweetPresenter {
 
     @Override
     public void update(Tweet tweet, EnumSet<UpdateFlags> flags) {
+        // Precomputed layouts go first so that setting the text doesn't
+        // lay it out again.
+        if (mTextFactory != null) {
+            updatePrecomputedText(tweet);
+        }
+
         mAuthorText.setText(tweet.getAuthorName());
         mMessageText.setText(tweet.getMessage());
 
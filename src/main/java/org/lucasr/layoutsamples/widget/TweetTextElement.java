@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 Lucas Rocha
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.lucasr.layoutsamples.widget;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils.TruncateAt;
+import android.view.View.MeasureSpec;
+
+import org.lucasr.layoutsamples.app.R;
+import org.lucasr.layoutsamples.canvas.AbstractUIElement;
+import org.lucasr.layoutsamples.canvas.StaticLayoutWithMaxLines;
+import org.lucasr.layoutsamples.canvas.UIElementHost;
+
+/**
+ * Builds the author and message text layouts of a {@link TweetLayoutView}
+ * row without the row itself, so that they can be measured off the UI
+ * thread and handed to its {@link PrecomputedTextView}s. Never drawn.
+ */
+public class TweetTextElement extends AbstractUIElement {
+    private final TextPaint mAuthorPaint;
+    private final TextPaint mMessagePaint;
+
+    // Horizontal space taken by everything but the text in a row.
+    private final int mContentInset;
+
+    private CharSequence mAuthorText;
+    private CharSequence mMessageText;
+
+    private Layout mAuthorLayout;
+    private Layout mMessageLayout;
+
+    public TweetTextElement(UIElementHost host, TextPaint authorPaint, TextPaint messagePaint) {
+        super(host);
+
+        // Each element gets its own paints as layouts keep a reference
+        // to them and the text color is set when drawing.
+        mAuthorPaint = new TextPaint(authorPaint);
+        mMessagePaint = new TextPaint(messagePaint);
+
+        final Resources res = getResources();
+        mContentInset = 2 * res.getDimensionPixelSize(R.dimen.tweet_padding) +
+                        res.getDimensionPixelSize(R.dimen.tweet_profile_image_size) +
+                        res.getDimensionPixelSize(R.dimen.tweet_content_margin);
+    }
+
+    public void setText(CharSequence authorText, CharSequence messageText) {
+        mAuthorText = authorText;
+        mMessageText = messageText;
+    }
+
+    public CharSequence getAuthorText() {
+        return mAuthorText;
+    }
+
+    public CharSequence getMessageText() {
+        return mMessageText;
+    }
+
+    /**
+     * Single line, ellipsized author layout. Null if the platform doesn't
+     * support limiting the number of lines in a layout.
+     */
+    public Layout getAuthorLayout() {
+        return mAuthorLayout;
+    }
+
+    public Layout getMessageLayout() {
+        return mMessageLayout;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int contentWidth = Math.max(0, width - mContentInset);
+
+        // Same parameters TextView uses by default.
+        mAuthorLayout = null;
+        if (StaticLayoutWithMaxLines.isSupported()) {
+            mAuthorLayout = StaticLayoutWithMaxLines.create(mAuthorText, 0, mAuthorText.length(),
+                    mAuthorPaint, contentWidth, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f,
+                    true, TruncateAt.END, contentWidth, 1);
+        }
+
+        mMessageLayout = new StaticLayout(mMessageText, mMessagePaint, contentWidth,
+                Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, true);
+
+        int height = mMessageLayout.getHeight();
+        if (mAuthorLayout != null) {
+            height += mAuthorLayout.getHeight();
+        }
+
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onLayout(int left, int top, int right, int bottom) {
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Do nothing, the layouts are drawn by the row's text views.
+    }
+
+    @Override
+    public void drawableStateChanged() {
+    }
+}